@@ -26,7 +26,7 @@ public class CamThinkAiInferenceBootstrap implements IntegrationBootstrap {
 
     @Override
     public void onStarted(Integration integrationConfig) {
-        // do nothing
+        camThinkAiInferenceService.subscribeMessages();
     }
 
     @Override
@@ -18,6 +18,7 @@ import org.springframework.stereotype.Component;
 
 import java.text.MessageFormat;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * author: Luxb
@@ -89,6 +90,21 @@ public class CamThinkAiInferenceClient {
         String url = config.getModelInferUrl();
         url = MessageFormat.format(url, modelId);
         ClientResponse clientResponse = OkHttpUtil.post(url, getCommonHeaders(), JsonUtils.toJSON(camThinkModelInferRequest));
+        return toModelInferResponse(clientResponse);
+    }
+
+    /**
+     * Same as {@link #modelInfer}, but the request is sent on the HTTP client's dispatcher so that many of them
+     * can be in flight over the pooled connections. The URL and token are resolved on the calling thread.
+     */
+    public CompletableFuture<CamThinkModelInferResponse> modelInferAsync(String modelId, CamThinkModelInferRequest camThinkModelInferRequest) {
+        String url = config.getModelInferUrl();
+        url = MessageFormat.format(url, modelId);
+        return OkHttpUtil.postAsync(url, getCommonHeaders(), JsonUtils.toJSON(camThinkModelInferRequest))
+                .thenApply(this::toModelInferResponse);
+    }
+
+    private CamThinkModelInferResponse toModelInferResponse(ClientResponse clientResponse) {
         validateResponse(clientResponse, Config.URL_MODEL_INFER, false);
         try {
             return JsonUtils.fromJSON(clientResponse.getData(), CamThinkModelInferResponse.class);
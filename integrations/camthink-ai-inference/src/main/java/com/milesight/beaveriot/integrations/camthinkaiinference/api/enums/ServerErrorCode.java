@@ -19,6 +19,7 @@ public enum ServerErrorCode implements ErrorCodeSpec {
     SERVER_OTHER_ERROR(HttpStatus.INTERNAL_SERVER_ERROR.value(), "server_other_error", "Server error code:"),
     DEVICE_NOT_FOUND(HttpStatus.NOT_FOUND.value(), "device_not_found", "Device not found"),
     DEVICE_BIND_ERROR(HttpStatus.BAD_REQUEST.value(), "device_bind_error", "Device bind error"),
+    INFER_HISTORY_NOT_FOUND(HttpStatus.NOT_FOUND.value(), "infer_history_not_found", "Infer history not found"),
     ;
 
     private final String errorCode;
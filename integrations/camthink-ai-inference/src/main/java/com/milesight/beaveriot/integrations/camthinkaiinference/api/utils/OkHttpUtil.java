@@ -7,12 +7,16 @@ import okhttp3.*;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class OkHttpUtil {
 
+    // Requests sent concurrently to the inference server, OkHttp allows only 5 by default
+    private static final int MAX_REQUESTS_PER_HOST = 32;
+
     private static final OkHttpClient client;
 
     private static final Map<String, String> commonHeaders = new ConcurrentHashMap<>();
@@ -23,9 +27,16 @@ public class OkHttpUtil {
                 .connectTimeout(10, TimeUnit.SECONDS)  // Connection timeout
                 .readTimeout(120, TimeUnit.SECONDS)    // Read timeout
                 .writeTimeout(10, TimeUnit.SECONDS)    // Write timeout
+                .dispatcher(buildDispatcher())
                 .build();
     }
 
+    private static Dispatcher buildDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+        return dispatcher;
+    }
+
     public static void updateCommonHeaders(Map<String, String> commonHeaders) {
         OkHttpUtil.commonHeaders.putAll(commonHeaders);
     }
@@ -72,6 +83,39 @@ public class OkHttpUtil {
         return request(builder, headers);
     }
 
+    /**
+     * Sends a POST request (JSON data) without blocking, the call is queued on the client's dispatcher
+     *
+     * @param url     The request URL
+     * @param headers The request headers (can be null)
+     * @param json    The request body in JSON format
+     * @return The response result, null if the request failed
+     */
+    public static CompletableFuture<ClientResponse> postAsync(String url, Map<String, String> headers, String json) {
+        MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+        RequestBody body = RequestBody.create(json, JSON);
+        Request.Builder builder = new Request.Builder().url(url).post(body);
+        CompletableFuture<ClientResponse> future = new CompletableFuture<>();
+        client.newCall(buildRequest(builder, headers)).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                log.error("Failed to execute request: " + e.getMessage());
+                future.complete(null);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    future.complete(toClientResponse(response));
+                } catch (IOException e) {
+                    log.error("Failed to read response: " + e.getMessage());
+                    future.complete(null);
+                }
+            }
+        });
+        return future;
+    }
+
     public static ClientResponse postForm(String url, Map<String, String> formData) {
         return postForm(url, null, formData);
     }
@@ -87,26 +131,36 @@ public class OkHttpUtil {
     }
 
     private static ClientResponse request(Request.Builder builder, Map<String, String> headers) {
+        Request request = buildRequest(builder, headers);
+
+        try (Response response = client.newCall(request).execute()) {
+            return toClientResponse(response);
+        } catch (IOException e) {
+            log.error("Failed to execute request: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Request buildRequest(Request.Builder builder, Map<String, String> headers) {
         if (headers == null) {
             headers = new HashMap<>();
+        } else {
+            headers = new HashMap<>(headers);
         }
         if (!commonHeaders.isEmpty()) {
             headers.putAll(commonHeaders);
         }
         addHeaders(builder, headers);
-        Request request = builder.build();
+        return builder.build();
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            return ClientResponse.builder()
-                    .isSuccessful(response.isSuccessful())
-                    .code(response.code())
-                    .message(response.message())
-                    .data(response.body() == null ? null :response.body().string())
-                    .build();
-        } catch (IOException e) {
-            log.error("Failed to execute request: " + e.getMessage());
-            return null;
-        }
+    private static ClientResponse toClientResponse(Response response) throws IOException {
+        return ClientResponse.builder()
+                .isSuccessful(response.isSuccessful())
+                .code(response.code())
+                .message(response.message())
+                .data(response.body() == null ? null :response.body().string())
+                .build();
     }
 
     /**
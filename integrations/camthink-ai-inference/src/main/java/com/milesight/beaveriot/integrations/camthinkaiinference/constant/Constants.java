@@ -1,5 +1,6 @@
 package com.milesight.beaveriot.integrations.camthinkaiinference.constant;
 
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -9,6 +10,7 @@ import java.util.Set;
 public class Constants {
     public static final String INTEGRATION_ID = "camthink-ai-inference";
     public static final String ATTRIBUTE_KEY_FORMAT = "format";
+    public static final String ATTRIBUTE_KEY_INPUT_SIZE = "input_size";
     public static final String ATTRIBUTE_FORMAT_IMAGE = "IMAGE";
     public static final String ATTRIBUTE_FORMAT_IMAGE_BASE64 = "IMAGE:BASE64";
     public static final String ATTRIBUTE_FORMAT_IMAGE_URL = "IMAGE:URL";
@@ -20,7 +22,11 @@ public class Constants {
     public static final String IDENTIFIER_MODEL_RESULT_IMAGE = "result_image";
     public static final String IDENTIFIER_INFER_HISTORY = "infer_history";
     public static final String IDENTIFIER_BIND_AT = "bind_at";
+    public static final String IDENTIFIER_CHANGE_THRESHOLD = "change_threshold";
+    public static final String IDENTIFIER_ROI = "roi";
     public static final String ENTITY_KEY_FORMAT = "{0}.{1}";
     public static final String CHILDREN_ENTITY_KEY_FORMAT = "{0}.{1}.{2}";
     public static final Long SYNC_MODELS_PERIOD_SECONDS = 1800L;
+    public static final List<String> MODEL_CONFIG_INPUT_SIZE_KEYS = List.of("input_size", "imgsz", "image_size", "inputSize");
+    public static final long INFER_TIMEOUT_SECONDS = 120L;
 }
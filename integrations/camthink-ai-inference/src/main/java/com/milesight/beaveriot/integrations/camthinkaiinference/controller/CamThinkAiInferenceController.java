@@ -1,5 +1,7 @@
 package com.milesight.beaveriot.integrations.camthinkaiinference.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.milesight.beaveriot.base.enums.ErrorCode;
 import com.milesight.beaveriot.base.exception.ServiceException;
 import com.milesight.beaveriot.base.response.ResponseBody;
 import com.milesight.beaveriot.base.response.ResponseBuilder;
@@ -15,14 +17,18 @@ import com.milesight.beaveriot.context.integration.model.Integration;
 import com.milesight.beaveriot.integrations.camthinkaiinference.api.enums.ServerErrorCode;
 import com.milesight.beaveriot.integrations.camthinkaiinference.constant.Constants;
 import com.milesight.beaveriot.integrations.camthinkaiinference.model.InferHistory;
+import com.milesight.beaveriot.integrations.camthinkaiinference.model.RegionOfInterest;
 import com.milesight.beaveriot.integrations.camthinkaiinference.model.request.BoundDeviceSearchRequest;
 import com.milesight.beaveriot.integrations.camthinkaiinference.model.request.DeviceBindRequest;
 import com.milesight.beaveriot.integrations.camthinkaiinference.model.request.DeviceSearchRequest;
 import com.milesight.beaveriot.integrations.camthinkaiinference.model.request.DeviceUnbindRequest;
 import com.milesight.beaveriot.integrations.camthinkaiinference.model.response.*;
 import com.milesight.beaveriot.integrations.camthinkaiinference.service.CamThinkAiInferenceService;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.BoundDeviceIndex;
 import com.milesight.beaveriot.integrations.camthinkaiinference.support.DataCenter;
 import com.milesight.beaveriot.integrations.camthinkaiinference.support.EntitySupport;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.ImageEntityIndex;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.ImageSupport;
 import com.milesight.beaveriot.integrations.camthinkaiinference.support.PageSupport;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.data.domain.Page;
@@ -31,6 +37,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -70,10 +77,20 @@ public class CamThinkAiInferenceController {
     public ResponseBody<DeviceResponse> searchDevice(@RequestBody DeviceSearchRequest deviceSearchRequest) {
         String searchName = deviceSearchRequest.getName();
         List<Integration> integrations = integrationServiceProvider.findIntegrations().stream().toList();
-        List<Device> devices = new ArrayList<>();
         Map<String, String> integrationMap = new HashMap<>();
+        integrations.forEach(integration -> integrationMap.put(integration.getId(), integration.getName()));
+        if (Boolean.TRUE.equals(deviceSearchRequest.getIsBound())) {
+            // Only the bound devices, which the index holds without loading the devices of every integration
+            BoundDeviceIndex boundDeviceIndex = service.getBoundDeviceIndex();
+            List<DeviceData> boundDeviceDataList = boundDeviceIndex.getDevices().stream()
+                    .filter(device -> filterDevice(device, searchName))
+                    .map(device -> convertToDeviceData(device, integrationMap, boundDeviceIndex.getImageEntityIndex()))
+                    .toList();
+            return ResponseBuilder.success(DeviceResponse.build(boundDeviceDataList));
+        }
+
+        List<Device> devices = new ArrayList<>();
         integrations.forEach(integration -> {
-            integrationMap.put(integration.getId(), integration.getName());
             List<Device> integrationDevices = deviceServiceProvider.findAll(integration.getId());
             if (!CollectionUtils.isEmpty(integrationDevices)) {
                 List<Device> filteredDevices = integrationDevices.stream().filter(device -> filterDevice(device, searchName)).toList();
@@ -82,29 +99,28 @@ public class CamThinkAiInferenceController {
                 }
             }
         });
-        List<DeviceData> allDeviceDataList = devices.stream().map(device -> convertToDeviceData(device, integrationMap)).toList();
+        ImageEntityIndex imageEntityIndex = DataCenter.getImageEntityIndex();
+        List<DeviceData> allDeviceDataList = devices.stream().map(device -> convertToDeviceData(device, integrationMap, imageEntityIndex)).toList();
         List<DeviceData> deviceDataList = new ArrayList<>();
         List<DeviceData> boundDeviceDataList = allDeviceDataList.stream().filter(DeviceData::isBound).toList();
         List<DeviceData> unboundDeviceDataList = allDeviceDataList.stream().filter(deviceData -> !deviceData.isBound()).toList();
         if (deviceSearchRequest.getIsBound() == null) {
             deviceDataList.addAll(unboundDeviceDataList);
             deviceDataList.addAll(boundDeviceDataList);
-        } else if (deviceSearchRequest.getIsBound()) {
-            deviceDataList.addAll(boundDeviceDataList);
         } else {
             deviceDataList.addAll(unboundDeviceDataList);
         }
         return ResponseBuilder.success(DeviceResponse.build(deviceDataList));
     }
 
-    private DeviceData convertToDeviceData(Device device, Map<String, String> integrationMap) {
+    private DeviceData convertToDeviceData(Device device, Map<String, String> integrationMap, ImageEntityIndex imageEntityIndex) {
         DeviceData deviceData = new DeviceData();
         deviceData.setId(device.getId().toString());
         deviceData.setIdentifier(device.getIdentifier());
         deviceData.setName(device.getName());
         deviceData.setIntegrationId(device.getIntegrationId());
         deviceData.setIntegrationName(integrationMap.get(device.getIntegrationId()));
-        deviceData.setBound(DataCenter.isDeviceInDeviceImageEntityMap(device.getId()));
+        deviceData.setBound(imageEntityIndex.containsDevice(device.getId()));
         return deviceData;
     }
 
@@ -181,7 +197,26 @@ public class CamThinkAiInferenceController {
         entityServiceProvider.save(bindAtEntity);
         saveEntityValue(bindAtEntity.getKey(), System.currentTimeMillis());
 
-        DataCenter.putDeviceImageEntity(deviceBindRequest.getImageEntityKey(), device.getId());
+        String changeThresholdKey = EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_CHANGE_THRESHOLD);
+        if (deviceBindRequest.getChangeThreshold() != null) {
+            Entity changeThresholdEntity = EntitySupport.buildDeviceLongEntity(integrationId, deviceKey, Constants.IDENTIFIER_CHANGE_THRESHOLD, "Change Threshold");
+            entityServiceProvider.save(changeThresholdEntity);
+            saveEntityValue(changeThresholdEntity.getKey(), deviceBindRequest.getChangeThreshold().longValue());
+        } else if (entityServiceProvider.findByKey(changeThresholdKey) != null) {
+            entityServiceProvider.deleteByKey(changeThresholdKey);
+        }
+
+        String roiKey = EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_ROI);
+        if (!CollectionUtils.isEmpty(deviceBindRequest.getRoi())) {
+            Entity roiEntity = EntitySupport.buildDeviceStringEntity(integrationId, deviceKey, Constants.IDENTIFIER_ROI, "ROI");
+            entityServiceProvider.save(roiEntity);
+            saveEntityValue(roiEntity.getKey(), JsonUtils.toJSON(deviceBindRequest.getRoi()));
+        } else if (entityServiceProvider.findByKey(roiKey) != null) {
+            entityServiceProvider.deleteByKey(roiKey);
+        }
+
+        service.invalidateDeviceBindingConfig(deviceKey);
+        service.bindImageEntity(deviceBindRequest.getImageEntityKey(), device.getId());
 
         return ResponseBuilder.success();
     }
@@ -202,6 +237,16 @@ public class CamThinkAiInferenceController {
         String modelId = (String) entityValueServiceProvider.findValueByKey(EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_MODEL_ID));
         response.setModelId(modelId);
 
+        Object changeThreshold = entityValueServiceProvider.findValueByKey(EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_CHANGE_THRESHOLD));
+        if (changeThreshold instanceof Number number) {
+            response.setChangeThreshold(number.intValue());
+        }
+
+        String roi = (String) entityValueServiceProvider.findValueByKey(EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_ROI));
+        if (!StringUtils.isEmpty(roi)) {
+            response.setRoi(JsonUtils.fromJSON(roi, new TypeReference<List<RegionOfInterest>>() {}));
+        }
+
         String imageEntityKey = DataCenter.getImageEntityKeyByDeviceId(device.getId());
         response.setImageEntityKey(imageEntityKey);
         String imageEntityValue = (String) entityValueServiceProvider.findValueByKey(imageEntityKey);
@@ -229,25 +274,13 @@ public class CamThinkAiInferenceController {
 
     @PostMapping("/bound-device/search")
     public ResponseBody<Page<BoundDeviceData>> boundDeviceSearch(@RequestBody BoundDeviceSearchRequest boundDeviceSearchRequest) {
-        String searchName = boundDeviceSearchRequest.getName();
-        List<Integration> integrations = integrationServiceProvider.findIntegrations().stream().toList();
-        List<Device> devices = new ArrayList<>();
-        integrations.forEach(integration -> {
-            List<Device> integrationDevices = deviceServiceProvider.findAll(integration.getId());
-            if (!CollectionUtils.isEmpty(integrationDevices)) {
-                List<Device> filteredDevices = integrationDevices.stream().filter(
-                        device -> (StringUtils.isEmpty(searchName) || device.getName().toLowerCase().contains(searchName.toLowerCase())) && DataCenter.isDeviceInDeviceImageEntityMap(device.getId())
-                ).toList();
-                if (!CollectionUtils.isEmpty(filteredDevices)) {
-                    devices.addAll(filteredDevices);
-                }
-            }
-        });
+        BoundDeviceIndex boundDeviceIndex = service.getBoundDeviceIndex();
+        List<Device> devices = boundDeviceIndex.search(boundDeviceSearchRequest.getName());
 
         int total = devices.size();
         List<Device> pageDeviceList = PageSupport.toPageList(devices, boundDeviceSearchRequest.getPageNumber(), boundDeviceSearchRequest.getPageSize());
         Map<String, String> modelMap = service.getModelMap();
-        List<BoundDeviceData> pageBoundDeviceDataList = pageDeviceList.stream().map(device -> convertToBoundDeviceData(device, modelMap)).toList();
+        List<BoundDeviceData> pageBoundDeviceDataList = convertToBoundDeviceDataList(pageDeviceList, boundDeviceIndex.getImageEntityIndex(), modelMap);
         return ResponseBuilder.success(PageSupport.toPage(pageBoundDeviceDataList, boundDeviceSearchRequest.getPageNumber(), boundDeviceSearchRequest.getPageSize(), total));
     }
 
@@ -258,8 +291,27 @@ public class CamThinkAiInferenceController {
         return ResponseBuilder.success();
     }
 
+    @GetMapping("/device/{deviceId}/result-image")
+    public ResponseBody<ResultImageRenderResponse> renderResultImage(@PathVariable("deviceId") String deviceId) {
+        Device device = deviceServiceProvider.findById(Long.parseLong(deviceId));
+        if (device == null) {
+            throw ServiceException.with(ServerErrorCode.DEVICE_NOT_FOUND.getErrorCode(), ServerErrorCode.DEVICE_NOT_FOUND.getErrorMessage()).build();
+        }
+
+        ImageSupport.ImageData resultImageData;
+        try {
+            resultImageData = service.renderResultImage(device.getKey());
+        } catch (ServiceException e) {
+            throw e;
+        } catch (Exception e) {
+            throw ServiceException.with(ErrorCode.SERVER_ERROR.getErrorCode(), e.getMessage()).build();
+        }
+        String resultImageBase64 = "data:" + resultImageData.getContentType() + ";base64," + Base64.getEncoder().encodeToString(resultImageData.getData());
+        return ResponseBuilder.success(new ResultImageRenderResponse(resultImageBase64));
+    }
+
     private void doUnbindDevice(Long deviceId) {
-        DataCenter.removeDeviceFromImageEntityMap(deviceId);
+        service.unbindImageEntity(deviceId);
         Device device = deviceServiceProvider.findById(deviceId);
         if (device == null) {
             return;
@@ -269,33 +321,67 @@ public class CamThinkAiInferenceController {
         String modelId = (String) entityValueServiceProvider.findValueByKey(EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_MODEL_ID));
         saveEntityValue(EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_MODEL_ID), "");
         entityServiceProvider.deleteByKey(EntitySupport.getDeviceEntityKey(deviceKey, MessageFormat.format(Constants.IDENTIFIER_MODEL_FORMAT, modelId)));
+        String changeThresholdKey = EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_CHANGE_THRESHOLD);
+        if (entityServiceProvider.findByKey(changeThresholdKey) != null) {
+            entityServiceProvider.deleteByKey(changeThresholdKey);
+        }
+        String roiKey = EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_ROI);
+        if (entityServiceProvider.findByKey(roiKey) != null) {
+            entityServiceProvider.deleteByKey(roiKey);
+        }
+        service.invalidateDeviceBindingConfig(deviceKey);
+    }
+
+    /**
+     * Fetch the entity values of the whole page at once, instead of a few lookups per device.
+     */
+    private List<BoundDeviceData> convertToBoundDeviceDataList(List<Device> devices, ImageEntityIndex imageEntityIndex, Map<String, String> modelMap) {
+        if (devices.isEmpty()) {
+            return List.of();
+        }
+
+        List<String> entityKeys = new ArrayList<>();
+        devices.forEach(device -> {
+            entityKeys.add(EntitySupport.getDeviceEntityKey(device.getKey(), Constants.IDENTIFIER_MODEL_ID));
+            entityKeys.add(EntitySupport.getDeviceEntityKey(device.getKey(), Constants.IDENTIFIER_INFER_HISTORY));
+            entityKeys.add(EntitySupport.getDeviceEntityKey(device.getKey(), Constants.IDENTIFIER_BIND_AT));
+            String imageEntityKey = imageEntityIndex.getImageEntityKey(device.getId());
+            if (imageEntityKey != null) {
+                entityKeys.add(imageEntityKey);
+            }
+        });
+        Map<String, Object> entityValues = entityValueServiceProvider.findValuesByKeys(entityKeys);
+        return devices.stream().map(device -> convertToBoundDeviceData(device, imageEntityIndex.getImageEntityKey(device.getId()), entityValues, modelMap)).toList();
     }
 
-    private BoundDeviceData convertToBoundDeviceData(Device device, Map<String, String> modelMap) {
+    private BoundDeviceData convertToBoundDeviceData(Device device, String imageEntityKey, Map<String, Object> entityValues, Map<String, String> modelMap) {
         BoundDeviceData boundDeviceData = new BoundDeviceData();
         boundDeviceData.setDeviceId(device.getId().toString());
         boundDeviceData.setDeviceName(device.getName());
 
-        String modelId = (String) entityValueServiceProvider.findValueByKey(EntitySupport.getDeviceEntityKey(device.getKey(), Constants.IDENTIFIER_MODEL_ID));
+        String modelId = (String) entityValues.get(EntitySupport.getDeviceEntityKey(device.getKey(), Constants.IDENTIFIER_MODEL_ID));
         boundDeviceData.setCurrentModelName(modelMap.get(modelId));
 
-        String imageEntityKey = DataCenter.getImageEntityKeyByDeviceId(device.getId());
-        String originImage = (String) entityValueServiceProvider.findValueByKey(imageEntityKey);
-        boundDeviceData.setOriginImage(originImage);
+        if (imageEntityKey != null) {
+            boundDeviceData.setOriginImage((String) entityValues.get(imageEntityKey));
+        }
 
         String inferHistoryKey = EntitySupport.getDeviceEntityKey(device.getKey(), Constants.IDENTIFIER_INFER_HISTORY);
-        String inferHistoryJson = (String) entityValueServiceProvider.findValueByKey(inferHistoryKey);
+        String inferHistoryJson = (String) entityValues.get(inferHistoryKey);
         if (!StringUtils.isEmpty(inferHistoryJson)) {
             InferHistory inferHistory = JsonUtils.fromJSON(inferHistoryJson, InferHistory.class);
             boundDeviceData.fillInferHistory(inferHistory);
         }
 
-        Long bindAt = (Long) entityValueServiceProvider.findValueByKey(EntitySupport.getDeviceEntityKey(device.getKey(), Constants.IDENTIFIER_BIND_AT));
+        Long bindAt = (Long) entityValues.get(EntitySupport.getDeviceEntityKey(device.getKey(), Constants.IDENTIFIER_BIND_AT));
         boundDeviceData.setCreateAt(bindAt);
 
-        Entity inferHistoryEntity = entityServiceProvider.findByKey(inferHistoryKey);
-        if (inferHistoryEntity != null) {
-            boundDeviceData.setInferHistoryEntityId(inferHistoryEntity.getId().toString());
+        // The entities of the device are loaded with it, no need to look the entity up again
+        if (device.getEntities() != null) {
+            device.getEntities().stream()
+                    .filter(entity -> inferHistoryKey.equals(entity.getKey()) && entity.getId() != null)
+                    .findFirst()
+                    .ifPresent(entity -> boundDeviceData.setInferHistoryEntityId(entity.getId().toString()));
         }
         boundDeviceData.setInferHistoryEntityKey(inferHistoryKey);
         return boundDeviceData;
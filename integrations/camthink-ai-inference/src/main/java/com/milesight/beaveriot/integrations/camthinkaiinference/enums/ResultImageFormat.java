@@ -0,0 +1,17 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.enums;
+
+/**
+ * author: Luxb
+ * create: 2026/10/18 19:05
+ **/
+public enum ResultImageFormat {
+    /**
+     * Same format as the source image, JPEG if the source format cannot be written
+     */
+    SOURCE,
+    JPEG,
+    /**
+     * Lossless, smaller than JPEG for images that are mostly flat overlays
+     */
+    PNG
+}
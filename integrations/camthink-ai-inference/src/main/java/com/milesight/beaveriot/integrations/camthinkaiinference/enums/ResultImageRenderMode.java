@@ -0,0 +1,16 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.enums;
+
+/**
+ * author: Luxb
+ * create: 2026/10/18 19:30
+ **/
+public enum ResultImageRenderMode {
+    /**
+     * Draw and upload the result image of every inference
+     */
+    EAGER,
+    /**
+     * Keep only the origin image and the inference outputs, the result image is drawn when requested
+     */
+    LAZY
+}
@@ -12,6 +12,8 @@ public class InferHistory {
     protected String modelName;
     protected String originImage;
     protected String resultImage;
+    // The result image is not stored, it is rendered from the origin image and the outputs when requested
+    protected boolean renderOnDemand;
     protected String inferOutputsData;
     protected String inferStatus;
     protected Long uplinkAt;
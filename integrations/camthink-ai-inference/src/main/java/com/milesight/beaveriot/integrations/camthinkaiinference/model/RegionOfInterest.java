@@ -0,0 +1,18 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Region of a camera frame to infer, given like the detections: either a box of [x, y, width, height] or a polygon
+ * of [x, y] points.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 22:00
+ **/
+@Data
+public class RegionOfInterest {
+    private List<Integer> box;
+    private List<List<Integer>> points;
+}
@@ -0,0 +1,18 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.model.message;
+
+import com.milesight.beaveriot.pubsub.api.message.RemoteBroadcastMessage;
+import lombok.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/18 17:35
+ **/
+@Data
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceImageEntityChangedMessage extends RemoteBroadcastMessage {
+    private String tenantId;
+}
@@ -1,5 +1,6 @@
 package com.milesight.beaveriot.integrations.camthinkaiinference.model.request;
 
+import com.milesight.beaveriot.integrations.camthinkaiinference.model.RegionOfInterest;
 import lombok.Data;
 
 import java.util.List;
@@ -15,6 +16,10 @@ public class DeviceBindRequest {
     private String imageEntityKey;
     private Map<String, Object> inferInputs;
     private List<OutputItem> inferOutputs;
+    // Minimum perceptual hash distance from the last inferred frame for a frame to be inferred, null for the default
+    private Integer changeThreshold;
+    // Regions of the frames to infer, empty to infer the whole frames
+    private List<RegionOfInterest> roi;
 
     @Data
     public static class OutputItem {
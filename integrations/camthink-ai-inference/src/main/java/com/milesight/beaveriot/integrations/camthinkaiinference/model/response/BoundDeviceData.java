@@ -22,6 +22,7 @@ public class BoundDeviceData extends InferHistory {
         this.modelName = inferHistory.getModelName();
         this.originImage = inferHistory.getOriginImage();
         this.resultImage = inferHistory.getResultImage();
+        this.renderOnDemand = inferHistory.isRenderOnDemand();
         this.inferOutputsData = inferHistory.getInferOutputsData();
         this.inferStatus = inferHistory.getInferStatus();
         this.uplinkAt = inferHistory.getUplinkAt();
@@ -1,5 +1,6 @@
 package com.milesight.beaveriot.integrations.camthinkaiinference.model.response;
 
+import com.milesight.beaveriot.integrations.camthinkaiinference.model.RegionOfInterest;
 import lombok.Data;
 
 import java.util.List;
@@ -18,6 +19,8 @@ public class DeviceBindingDetailResponse {
     private String imageEntityValue;
     private Map<String, Object> inferInputs;
     private List<OutputItem> inferOutputs;
+    private Integer changeThreshold;
+    private List<RegionOfInterest> roi;
 
     @Data
     public static class OutputItem {
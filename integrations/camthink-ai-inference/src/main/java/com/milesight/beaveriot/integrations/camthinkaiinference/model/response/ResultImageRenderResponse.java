@@ -0,0 +1,16 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.model.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * author: Luxb
+ * create: 2026/10/18 19:35
+ **/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultImageRenderResponse {
+    private String resultImageBase64;
+}
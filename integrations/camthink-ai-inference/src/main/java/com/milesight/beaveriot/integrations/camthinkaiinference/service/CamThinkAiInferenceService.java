@@ -14,6 +14,7 @@ import com.milesight.beaveriot.context.integration.enums.EntityValueType;
 import com.milesight.beaveriot.context.integration.model.Device;
 import com.milesight.beaveriot.context.integration.model.Entity;
 import com.milesight.beaveriot.context.integration.model.ExchangePayload;
+import com.milesight.beaveriot.context.integration.model.event.DeviceEvent;
 import com.milesight.beaveriot.context.integration.wrapper.AnnotatedEntityWrapper;
 import com.milesight.beaveriot.context.model.ResourceRefDTO;
 import com.milesight.beaveriot.context.security.TenantContext;
@@ -30,28 +31,52 @@ import com.milesight.beaveriot.integrations.camthinkaiinference.api.model.respon
 import com.milesight.beaveriot.integrations.camthinkaiinference.constant.Constants;
 import com.milesight.beaveriot.integrations.camthinkaiinference.entity.*;
 import com.milesight.beaveriot.integrations.camthinkaiinference.enums.InferStatus;
+import com.milesight.beaveriot.integrations.camthinkaiinference.enums.ResultImageRenderMode;
 import com.milesight.beaveriot.integrations.camthinkaiinference.model.InferHistory;
+import com.milesight.beaveriot.integrations.camthinkaiinference.model.RegionOfInterest;
+import com.milesight.beaveriot.integrations.camthinkaiinference.model.message.DeviceBindingChangedMessage;
+import com.milesight.beaveriot.integrations.camthinkaiinference.model.message.DeviceImageEntityChangedMessage;
+import com.milesight.beaveriot.integrations.camthinkaiinference.model.message.ModelCatalogChangedMessage;
 import com.milesight.beaveriot.integrations.camthinkaiinference.model.response.ModelInferResponse;
 import com.milesight.beaveriot.integrations.camthinkaiinference.model.response.ModelOutputSchemaResponse;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.BoundDeviceIndex;
 import com.milesight.beaveriot.integrations.camthinkaiinference.support.DataCenter;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.DeviceBindingConfig;
 import com.milesight.beaveriot.integrations.camthinkaiinference.support.EntitySupport;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.FrameChangeGate;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.ImageEntityIndex;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.ImageFetcher;
 import com.milesight.beaveriot.integrations.camthinkaiinference.support.ImageSupport;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.InferenceConcurrencyLimiter;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.InferenceResultCache;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.LatestFrameSlots;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.ModelCatalog;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.TenantVersionedCache;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.VersionedCache;
 import com.milesight.beaveriot.integrations.camthinkaiinference.support.image.ImageDrawEngine;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.image.InferImagePreprocessor;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.image.RenderedImageCache;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.image.ResultImageEncoder;
 import com.milesight.beaveriot.integrations.camthinkaiinference.support.image.action.ImageDrawPathAction;
 import com.milesight.beaveriot.integrations.camthinkaiinference.support.image.action.ImageDrawPolygonAction;
 import com.milesight.beaveriot.integrations.camthinkaiinference.support.image.action.ImageDrawRectangleAction;
 import com.milesight.beaveriot.integrations.camthinkaiinference.support.image.config.ImageDrawConfig;
+import com.milesight.beaveriot.pubsub.MessagePubSub;
 import com.milesight.beaveriot.scheduler.integration.IntegrationScheduled;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.unit.DataSize;
 
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
 
 /**
  * author: Luxb
@@ -60,20 +85,51 @@ import java.util.stream.Collectors;
 @Slf4j
 @Service
 public class CamThinkAiInferenceService {
+    private static final String AUTO_INFER_NAME = "camthink-ai-inference.auto-infer";
     private final DeviceServiceProvider deviceServiceProvider;
     private final EntityServiceProvider entityServiceProvider;
     private final EntityValueServiceProvider entityValueServiceProvider;
     private final ResourceServiceProvider resourceServiceProvider;
     private final CamThinkAiInferenceClient camThinkAiInferenceClient;
+    private final MessagePubSub messagePubSub;
+    private final ImageFetcher imageFetcher;
+    private final ResultImageEncoder resultImageEncoder;
+    private final InferenceResultCache inferenceResultCache;
+    private final FrameChangeGate frameChangeGate;
+    private final InferImagePreprocessor inferImagePreprocessor;
+    private final ResultImageRenderMode resultImageRenderMode;
+    private final RenderedImageCache renderedImageCache;
     private final ThreadPoolExecutor autoInferThreadPoolExecutor;
-
-    public CamThinkAiInferenceService(DeviceServiceProvider deviceServiceProvider, EntityServiceProvider entityServiceProvider, EntityValueServiceProvider entityValueServiceProvider, ResourceServiceProvider resourceServiceProvider, CamThinkAiInferenceClient camThinkAiInferenceClient) {
+    private final LatestFrameSlots<Long> autoInferSlots;
+    private final InferenceConcurrencyLimiter inferenceConcurrencyLimiter;
+    // Replaced by every model sync
+    private final TenantVersionedCache<ModelCatalog> modelCatalogCache = new TenantVersionedCache<>();
+    // Binding configuration by tenant and device key, a null value means the device has no complete binding
+    private final VersionedCache<String, DeviceBindingConfig> deviceBindingConfigCache = new VersionedCache<>();
+    // Rebuilt when the image entity index is replaced or a bound device changes, reusing the devices it holds
+    private final TenantVersionedCache<BoundDeviceIndex> boundDeviceIndexCache = new TenantVersionedCache<>();
+
+    public CamThinkAiInferenceService(DeviceServiceProvider deviceServiceProvider, EntityServiceProvider entityServiceProvider, EntityValueServiceProvider entityValueServiceProvider, ResourceServiceProvider resourceServiceProvider, CamThinkAiInferenceClient camThinkAiInferenceClient, MessagePubSub messagePubSub, ImageFetcher imageFetcher, ResultImageEncoder resultImageEncoder, InferenceConcurrencyLimiter inferenceConcurrencyLimiter, InferenceResultCache inferenceResultCache, FrameChangeGate frameChangeGate, InferImagePreprocessor inferImagePreprocessor,
+                                      @Value("${camthink-ai-inference.result-image.render-mode:EAGER}") ResultImageRenderMode resultImageRenderMode,
+                                      @Value("${camthink-ai-inference.result-image.render-cache-size:64MB}") DataSize renderCacheSize,
+                                      ObjectProvider<MeterRegistry> meterRegistryProvider) {
         this.deviceServiceProvider = deviceServiceProvider;
         this.entityServiceProvider = entityServiceProvider;
         this.entityValueServiceProvider = entityValueServiceProvider;
         this.resourceServiceProvider = resourceServiceProvider;
         this.camThinkAiInferenceClient = camThinkAiInferenceClient;
+        this.messagePubSub = messagePubSub;
+        this.imageFetcher = imageFetcher;
+        this.resultImageEncoder = resultImageEncoder;
+        this.inferenceResultCache = inferenceResultCache;
+        this.frameChangeGate = frameChangeGate;
+        this.inferImagePreprocessor = inferImagePreprocessor;
+        this.resultImageRenderMode = resultImageRenderMode;
+        this.renderedImageCache = new RenderedImageCache(renderCacheSize.toBytes());
         this.autoInferThreadPoolExecutor = buildAutoInferThreadPoolExecutor();
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        this.autoInferSlots = new LatestFrameSlots<>(AUTO_INFER_NAME, autoInferThreadPoolExecutor, meterRegistry);
+        this.inferenceConcurrencyLimiter = inferenceConcurrencyLimiter;
     }
 
     private ThreadPoolExecutor buildAutoInferThreadPoolExecutor() {
@@ -81,8 +137,10 @@ public class CamThinkAiInferenceService {
         int maxPoolSize = corePoolSize * 2;
         long keepAliveTime = 60L;
         TimeUnit unit = TimeUnit.SECONDS;
+        // Each device has at most one frame queued, see LatestFrameSlots
         BlockingQueue<Runnable> workQueue = new LinkedBlockingQueue<>(1000);
-        RejectedExecutionHandler handler = new ThreadPoolExecutor.CallerRunsPolicy();
+        // Never infer on the event bus thread, a rejected frame is dropped and counted instead
+        RejectedExecutionHandler handler = new ThreadPoolExecutor.AbortPolicy();
 
         return new ThreadPoolExecutor(
                 corePoolSize,
@@ -109,6 +167,114 @@ public class CamThinkAiInferenceService {
         }
     }
 
+    public void subscribeMessages() {
+        messagePubSub.subscribe(DeviceImageEntityChangedMessage.class, this::onDeviceImageEntityChanged);
+        messagePubSub.subscribe(ModelCatalogChangedMessage.class, this::onModelCatalogChanged);
+        messagePubSub.subscribe(DeviceBindingChangedMessage.class, this::onDeviceBindingChanged);
+    }
+
+    private void onDeviceBindingChanged(DeviceBindingChangedMessage message) {
+        deviceBindingConfigCache.invalidate(getDeviceBindingConfigCacheKey(message.getTenantId(), message.getDeviceKey()));
+        boundDeviceIndexCache.update(message.getTenantId(), boundDeviceIndex -> boundDeviceIndex.withoutDevice(message.getDeviceKey()));
+    }
+
+    private void onModelCatalogChanged(ModelCatalogChangedMessage message) {
+        modelCatalogCache.invalidate(message.getTenantId());
+    }
+
+    private void onDeviceImageEntityChanged(DeviceImageEntityChangedMessage message) {
+        DataCenter.invalidateImageEntityIndexCache(message.getTenantId());
+    }
+
+    /**
+     * Bind the image entity to the device and notify the other nodes to drop their image entity index.
+     */
+    public void bindImageEntity(String imageEntityKey, Long deviceId) {
+        DataCenter.putDeviceImageEntity(imageEntityKey, deviceId);
+        publishDeviceImageEntityChanged();
+    }
+
+    public void unbindImageEntity(Long deviceId) {
+        DataCenter.removeDeviceFromImageEntityMap(deviceId);
+        autoInferSlots.remove(deviceId);
+        frameChangeGate.forget(deviceId);
+        publishDeviceImageEntityChanged();
+    }
+
+    /**
+     * Drop the cached binding configuration of the device on every node, called after its binding entities changed.
+     */
+    public void invalidateDeviceBindingConfig(String deviceKey) {
+        String tenantId = TenantContext.getTenantId();
+        deviceBindingConfigCache.invalidate(getDeviceBindingConfigCacheKey(tenantId, deviceKey));
+        boundDeviceIndexCache.update(tenantId, boundDeviceIndex -> boundDeviceIndex.withoutDevice(deviceKey));
+        messagePubSub.publish(DeviceBindingChangedMessage.builder().tenantId(tenantId).deviceKey(deviceKey).build());
+    }
+
+    /**
+     * Devices of the current tenant bound to an image entity. Only the devices bound or changed since the last
+     * rebuild are loaded.
+     */
+    public BoundDeviceIndex getBoundDeviceIndex() {
+        String tenantId = TenantContext.getTenantId();
+        ImageEntityIndex imageEntityIndex = DataCenter.getImageEntityIndex();
+        BoundDeviceIndex boundDeviceIndex = boundDeviceIndexCache.get(tenantId, () -> BoundDeviceIndex.of(imageEntityIndex, null, deviceServiceProvider::findById));
+        if (!boundDeviceIndex.isUpToDate(imageEntityIndex)) {
+            // Built before the image entity map last changed, or a device was dropped from it since
+            BoundDeviceIndex previousBoundDeviceIndex = boundDeviceIndex;
+            BoundDeviceIndex rebuiltBoundDeviceIndex = BoundDeviceIndex.of(imageEntityIndex, previousBoundDeviceIndex, deviceServiceProvider::findById);
+            // Not cached if another device was dropped meanwhile, so that its change is not lost
+            boundDeviceIndexCache.update(tenantId, cachedBoundDeviceIndex -> cachedBoundDeviceIndex == previousBoundDeviceIndex ? rebuiltBoundDeviceIndex : cachedBoundDeviceIndex);
+            boundDeviceIndex = rebuiltBoundDeviceIndex;
+        }
+        return boundDeviceIndex;
+    }
+
+    private DeviceBindingConfig getDeviceBindingConfig(String deviceKey) {
+        return deviceBindingConfigCache.get(getDeviceBindingConfigCacheKey(TenantContext.getTenantId(), deviceKey), () -> loadDeviceBindingConfig(deviceKey));
+    }
+
+    private DeviceBindingConfig loadDeviceBindingConfig(String deviceKey) {
+        String modelId = (String) entityValueServiceProvider.findValueByKey(EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_MODEL_ID));
+        if (StringUtils.isEmpty(modelId)) {
+            return null;
+        }
+
+        String modelIdentifier = MessageFormat.format(Constants.IDENTIFIER_MODEL_FORMAT, modelId);
+        String modelInferInputsKey = EntitySupport.getDeviceEntityChildrenKey(deviceKey, modelIdentifier, Constants.IDENTIFIER_MODEL_INFER_INPUTS);
+        String inferInputsValue = (String) entityValueServiceProvider.findValueByKey(modelInferInputsKey);
+        if (StringUtils.isEmpty(inferInputsValue)) {
+            return null;
+        }
+
+        String inferHistoryEntityKey = EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_INFER_HISTORY);
+        if (entityServiceProvider.findByKey(inferHistoryEntityKey) == null) {
+            inferHistoryEntityKey = null;
+        }
+
+        Set<String> outputFields = new HashSet<>();
+        Entity modelEntity = entityServiceProvider.findByKey(EntitySupport.getDeviceEntityKey(deviceKey, modelIdentifier));
+        if (modelEntity != null && modelEntity.getChildren() != null) {
+            modelEntity.getChildren().stream()
+                    .map(Entity::getIdentifier)
+                    .filter(identifier -> !Constants.IDENTIFIER_MODEL_INFER_INPUTS.equals(identifier))
+                    .forEach(outputFields::add);
+        }
+        Object changeThresholdValue = entityValueServiceProvider.findValueByKey(EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_CHANGE_THRESHOLD));
+        Integer changeThreshold = changeThresholdValue instanceof Number number ? number.intValue() : null;
+        String roiValue = (String) entityValueServiceProvider.findValueByKey(EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_ROI));
+        List<RegionOfInterest> regionsOfInterest = StringUtils.isEmpty(roiValue) ? null : JsonUtils.fromJSON(roiValue, new TypeReference<>() {});
+        return DeviceBindingConfig.of(deviceKey, modelId, modelIdentifier, JsonUtils.toMap(inferInputsValue), inferHistoryEntityKey, outputFields, changeThreshold, regionsOfInterest);
+    }
+
+    private String getDeviceBindingConfigCacheKey(String tenantId, String deviceKey) {
+        return tenantId + ":" + deviceKey;
+    }
+
+    private void publishDeviceImageEntityChanged() {
+        messagePubSub.publish(DeviceImageEntityChangedMessage.builder().tenantId(TenantContext.getTenantId()).build());
+    }
+
     private void checkAndUpdateSyncModelsScheduled() {
         AnnotatedEntityWrapper<CamThinkAiInferenceConnectionPropertiesEntities> wrapper = new AnnotatedEntityWrapper<>();
         boolean apiStatus = (Boolean) wrapper.getValue(CamThinkAiInferenceConnectionPropertiesEntities::getApiStatus).orElse(false);
@@ -201,28 +367,92 @@ public class CamThinkAiInferenceService {
     @SuppressWarnings("unused")
     @EventSubscribe(payloadKeyExpression = "*.device.*")
     public void detectImageAutoInfer(Event<ExchangePayload> event) {
+        // Subscribed to the events of every device, most of which carry no bound image entity
+        ImageEntityIndex imageEntityIndex = DataCenter.getImageEntityIndex();
+        if (imageEntityIndex.isEmpty()) {
+            return;
+        }
+
         ExchangePayload exchangePayload = event.getPayload();
         exchangePayload.forEach((key, value) -> {
-            Device device = getDeviceByImageEntityKey(key);
+            invalidateDeviceBindingConfigIfChanged(key);
+            Long deviceId = imageEntityIndex.getDeviceId(key);
+            if (deviceId == null) {
+                return;
+            }
+            Device device = getDeviceById(deviceId);
             if (device != null) {
                 CamThinkAiInferenceService service = self();
-                autoInferThreadPoolExecutor.execute(() -> service.autoInfer(device, key, value.toString()));
+                // A newer frame of the device replaces the one still waiting for inference
+                autoInferSlots.submit(device.getId(), () -> service.autoInfer(device, key, value.toString()));
             }
         });
     }
 
+    /**
+     * The model id or infer inputs of a device may also be changed through the entity values of the device.
+     */
+    private void invalidateDeviceBindingConfigIfChanged(String entityKey) {
+        String modelIdSuffix = "." + Constants.IDENTIFIER_MODEL_ID;
+        String inferInputsSuffix = "." + Constants.IDENTIFIER_MODEL_INFER_INPUTS;
+        String deviceKey = null;
+        if (entityKey.endsWith(modelIdSuffix)) {
+            deviceKey = entityKey.substring(0, entityKey.length() - modelIdSuffix.length());
+        } else if (entityKey.endsWith(inferInputsSuffix)) {
+            String modelEntityKey = entityKey.substring(0, entityKey.length() - inferInputsSuffix.length());
+            deviceKey = modelEntityKey.substring(0, modelEntityKey.lastIndexOf('.'));
+        }
+        // Only bound devices have a binding configuration cached, binding a device invalidates it beforehand
+        if (deviceKey != null && getBoundDeviceIndex().containsDeviceKey(deviceKey)) {
+            invalidateDeviceBindingConfig(deviceKey);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    @EventSubscribe(payloadKeyExpression = "*.device.*", eventType = DeviceEvent.EventType.UPDATED)
+    public void onDeviceUpdated(DeviceEvent event) {
+        if (isBoundDevice(event.getPayload())) {
+            invalidateDeviceBindingConfig(event.getPayload().getKey());
+        }
+    }
+
+    @SuppressWarnings("unused")
+    @EventSubscribe(payloadKeyExpression = "*.device.*", eventType = DeviceEvent.EventType.DELETED)
+    public void onDeviceDeleted(DeviceEvent event) {
+        if (isBoundDevice(event.getPayload())) {
+            invalidateDeviceBindingConfig(event.getPayload().getKey());
+        }
+    }
+
+    // Events of every integration's devices arrive here, only bound devices have anything cached
+    private boolean isBoundDevice(Device device) {
+        return device.getId() != null && DataCenter.getImageEntityIndex().containsDevice(device.getId());
+    }
+
+    private CamThinkModelInferResponse inferWithinLimit(String modelId, CamThinkModelInferRequest camThinkModelInferRequest) throws ExecutionException, InterruptedException, TimeoutException {
+        CompletableFuture<CamThinkModelInferResponse> future = inferenceConcurrencyLimiter.execute(TenantContext.getTenantId(), modelId,
+                () -> camThinkAiInferenceClient.modelInferAsync(modelId, camThinkModelInferRequest));
+        try {
+            return future.get(Constants.INFER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            // Not sent anymore if it is still queued
+            future.cancel(false);
+            throw e;
+        }
+    }
+
     public CamThinkAiInferenceService self() {
         return SpringContext.getBean(CamThinkAiInferenceService.class);
     }
 
-    private Device getDeviceByImageEntityKey(String imageEntityKey) {
-        Long deviceId = DataCenter.getDeviceIdByImageEntityKey(imageEntityKey);
-        if (deviceId == null) {
-            return null;
-        }
-        Device device = deviceServiceProvider.findById(deviceId);
+    private Device getDeviceById(Long deviceId) {
+        // Bound devices are held by the index, which only leaves out those that no longer existed when it was built
+        Device device = getBoundDeviceIndex().getDevice(deviceId);
         if (device == null) {
-            DataCenter.removeDeviceFromImageEntityMap(deviceId);
+            device = deviceServiceProvider.findById(deviceId);
+            if (device == null) {
+                unbindImageEntity(deviceId);
+            }
         }
         return device;
     }
@@ -231,32 +461,58 @@ public class CamThinkAiInferenceService {
         try {
             long uplinkAt = System.currentTimeMillis();
             String deviceKey = device.getKey();
-            String modelId = (String) entityValueServiceProvider.findValueByKey(EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_MODEL_ID));
-            if (StringUtils.isEmpty(modelId)) {
-                return;
-            }
-
-            String modelIdentifier = MessageFormat.format(Constants.IDENTIFIER_MODEL_FORMAT, modelId);
-            String modelInferInputsKey = EntitySupport.getDeviceEntityChildrenKey(deviceKey, modelIdentifier, Constants.IDENTIFIER_MODEL_INFER_INPUTS);
-            String inferInputsValue = (String) entityValueServiceProvider.findValueByKey(modelInferInputsKey);
-            if (StringUtils.isEmpty(inferInputsValue)) {
+            DeviceBindingConfig bindingConfig = getDeviceBindingConfig(deviceKey);
+            if (bindingConfig == null) {
                 return;
             }
 
+            String modelId = bindingConfig.getModelId();
             CamThinkModelInferRequest camThinkModelInferRequest = new CamThinkModelInferRequest();
-            Map<String, Object> inferInputs = JsonUtils.toMap(inferInputsValue);
+            Map<String, Object> inferInputs = new HashMap<>(bindingConfig.getInferInputs());
             inferInputs.put(CamThinkModelInferRequest.INPUT_IMAGE_FIELD, imageEntityValue);
             camThinkModelInferRequest.setInputs(inferInputs);
 
+            ImageSupport.ImageData originImageData = ImageSupport.isUrl(imageEntityValue) ?
+                    imageFetcher.fetch(imageEntityValue) : ImageSupport.parseFromImageBase64(imageEntityValue);
+            FrameChangeGate.Frame frame = frameChangeGate.check(device.getId(), originImageData.getData(), bindingConfig);
+            if (frame == null) {
+                return;
+            }
+
+            Integer inputSize = getModelCatalog().getInputSize(modelId);
+            String resultCacheKey = null;
+            InferenceResultCache.CachedResult cachedResult = null;
+            if (inferenceResultCache.isEnabled()) {
+                resultCacheKey = InferenceResultCache.key(TenantContext.getTenantId(), modelId, bindingConfig.getInferInputs(),
+                        bindingConfig.getRegionsOfInterest(), inputSize, originImageData.getData());
+                cachedResult = inferenceResultCache.get(resultCacheKey);
+            }
+
             CamThinkModelInferResponse camThinkModelInferResponse = null;
-            try {
-                camThinkModelInferResponse = camThinkAiInferenceClient.modelInfer(modelId, camThinkModelInferRequest);
-            } catch (Exception e) {
-                log.error("modelInfer error deviceId:{}, imageEntityKey:{}, error:", device.getId(), imageEntityKey, e);
+            if (cachedResult != null) {
+                // Same image as an earlier frame, reuse its result and result image
+                camThinkModelInferResponse = cachedResult.getResponse();
+            } else {
+                InferImagePreprocessor.PreparedImage preparedImage = inferImagePreprocessor.prepare(originImageData, bindingConfig.getRegionsOfInterest(), inputSize);
+                if (preparedImage != null) {
+                    inferInputs.put(CamThinkModelInferRequest.INPUT_IMAGE_FIELD, preparedImage.imageBase64());
+                }
+                try {
+                    // Sent together with the concurrent frames of other devices using the same model
+                    camThinkModelInferResponse = inferWithinLimit(modelId, camThinkModelInferRequest);
+                } catch (Exception e) {
+                    log.error("modelInfer error deviceId:{}, imageEntityKey:{}, error:", device.getId(), imageEntityKey, e);
+                }
+                if (preparedImage != null && camThinkModelInferResponse != null && camThinkModelInferResponse.isSuccess()) {
+                    inferImagePreprocessor.restoreCoordinates(camThinkModelInferResponse, preparedImage);
+                }
             }
             InferStatus inferStatus = InferStatus.OK;
             if (camThinkModelInferResponse == null || !camThinkModelInferResponse.isSuccess()) {
                 inferStatus = InferStatus.FAILED;
+            } else {
+                // Failed frames are not remembered, so the next similar frame is inferred again
+                frameChangeGate.recordInferred(device.getId(), frame);
             }
             long inferAt = System.currentTimeMillis();
 
@@ -264,14 +520,6 @@ public class CamThinkAiInferenceService {
 
             ExchangePayload exchangePayload = new ExchangePayload();
 
-            String imageBase64;
-            if (ImageSupport.isUrl(imageEntityValue)) {
-                ImageSupport.ImageResult imageResult = ImageSupport.getImageBase64FromUrl(imageEntityValue);
-                imageBase64 = imageResult.getImageBase64();
-            } else {
-                imageBase64 = imageEntityValue;
-            }
-            ImageSupport.ImageData originImageData = ImageSupport.parseFromImageBase64(imageBase64);
             String originImageFileName = getImageFileName(device.getId(), "origin_image", originImageData.getImageSuffix());
             String originImageResourceUrl = resourceServiceProvider.putTempResource(originImageFileName, originImageData.getContentType(), originImageData.getData());
 
@@ -283,17 +531,25 @@ public class CamThinkAiInferenceService {
             inferHistory.setInferAt(inferAt);
 
             String resultImageResourceUrl = "";
-            String inferHistoryEntityKey = EntitySupport.getDeviceEntityKey(device.getKey(), Constants.IDENTIFIER_INFER_HISTORY);
-            String resultImageEntityKey = EntitySupport.getDeviceEntityChildrenKey(deviceKey, modelIdentifier, Constants.IDENTIFIER_MODEL_RESULT_IMAGE);
+            String inferHistoryEntityKey = bindingConfig.getInferHistoryEntityKey();
+            String resultImageEntityKey = bindingConfig.getOutputEntityKey(Constants.IDENTIFIER_MODEL_RESULT_IMAGE);
             if (InferStatus.OK.equals(inferStatus)) {
-                String resultImageBase64 = drawResultImage(imageBase64, camThinkModelInferResponse);
-                ImageSupport.ImageData resultImageData = ImageSupport.parseFromImageBase64(resultImageBase64);
-                String resultImageFileName = getImageFileName(device.getId(), "result_image", resultImageData.getImageSuffix());
-                resultImageResourceUrl = resourceServiceProvider.putTempResource(resultImageFileName, resultImageData.getContentType(), resultImageData.getData());
-
-                inferHistory.setResultImage(resultImageResourceUrl);
-                if (entityServiceProvider.findByKey(resultImageEntityKey) != null) {
-                    exchangePayload.put(resultImageEntityKey, resultImageResourceUrl);
+                if (ResultImageRenderMode.LAZY == resultImageRenderMode) {
+                    // Rendered from the origin image and the outputs when requested, see renderResultImage
+                    inferHistory.setRenderOnDemand(true);
+                } else {
+                    if (cachedResult != null && !StringUtils.isEmpty(cachedResult.getResultImage())) {
+                        resultImageResourceUrl = cachedResult.getResultImage();
+                    } else {
+                        ImageSupport.ImageData resultImageData = drawResultImage(originImageData, getDetections(camThinkModelInferResponse));
+                        String resultImageFileName = getImageFileName(device.getId(), "result_image", resultImageData.getImageSuffix());
+                        resultImageResourceUrl = resourceServiceProvider.putTempResource(resultImageFileName, resultImageData.getContentType(), resultImageData.getData());
+                    }
+
+                    inferHistory.setResultImage(resultImageResourceUrl);
+                    if (resultImageEntityKey != null) {
+                        exchangePayload.put(resultImageEntityKey, resultImageResourceUrl);
+                    }
                 }
 
                 if (camThinkModelInferResponse.getData() != null && camThinkModelInferResponse.getData().getOutputs() != null) {
@@ -307,15 +563,19 @@ public class CamThinkAiInferenceService {
                         } else {
                             value = camThinkModelInferResponse.getData().getOutputs().get(filed).toString();
                         }
-                        String outputFiledEntityKey = EntitySupport.getDeviceEntityChildrenKey(deviceKey, modelIdentifier, filed);
-                        if (entityServiceProvider.findByKey(outputFiledEntityKey) != null) {
+                        String outputFiledEntityKey = bindingConfig.getOutputEntityKey(filed);
+                        if (outputFiledEntityKey != null) {
                             exchangePayload.put(outputFiledEntityKey, value);
                         }
                     }
                 }
             }
 
-            if (entityServiceProvider.findByKey(inferHistoryEntityKey) != null) {
+            if (resultCacheKey != null && cachedResult == null && InferStatus.OK.equals(inferStatus)) {
+                inferenceResultCache.put(resultCacheKey, camThinkModelInferResponse, resultImageResourceUrl);
+            }
+
+            if (inferHistoryEntityKey != null) {
                 exchangePayload.put(inferHistoryEntityKey, JsonUtils.toJSON(inferHistory));
             }
 
@@ -330,7 +590,7 @@ public class CamThinkAiInferenceService {
     }
 
     private void linkResource(Map<String, Pair<Long, Long>> entityKeyLatestIdAndHistoryIds, String entityKey, List<String> resourceUrls) {
-        if (CollectionUtils.isEmpty(entityKeyLatestIdAndHistoryIds)) {
+        if (entityKey == null || CollectionUtils.isEmpty(entityKeyLatestIdAndHistoryIds)) {
             return;
         }
 
@@ -356,47 +616,109 @@ public class CamThinkAiInferenceService {
     }
 
     public Map<String, String> getModelMap() {
-        List<Entity> entities = entityServiceProvider.findByTargetId(AttachTargetType.INTEGRATION, Constants.INTEGRATION_ID);
-        return entities.stream().filter(entity -> entity.getIdentifier().startsWith(Constants.IDENTIFIER_MODEL_PREFIX)).collect(Collectors.toMap(
-                entity -> {
-                    String identifier = entity.getIdentifier();
-                    return identifier.substring(Constants.IDENTIFIER_MODEL_PREFIX.length());
-                },
-                Entity::getName
-        ));
+        return getModelCatalog().getModelNames();
+    }
+
+    /**
+     * Cached model catalog of the current tenant, loaded from the model entities on the first lookup after a change.
+     */
+    private ModelCatalog getModelCatalog() {
+        return modelCatalogCache.get(TenantContext.getTenantId(), () -> ModelCatalog.of(entityServiceProvider.findByTargetId(AttachTargetType.INTEGRATION, Constants.INTEGRATION_ID)));
+    }
+
+    /**
+     * Replace the model catalog of the tenant with the synced models, or drop it when the sync did not complete,
+     * and notify the other nodes to drop theirs.
+     */
+    private void updateModelCatalog(String tenantId, List<Entity> modelEntities) {
+        if (modelEntities == null) {
+            modelCatalogCache.invalidate(tenantId);
+        } else {
+            modelCatalogCache.put(tenantId, ModelCatalog.of(modelEntities));
+        }
+        messagePubSub.publish(ModelCatalogChangedMessage.builder().tenantId(tenantId).build());
     }
 
     private String drawResultImage(String imageBase64, CamThinkModelInferResponse camThinkModelInferResponse) throws Exception {
-        if (camThinkModelInferResponse.getData() == null) {
+        List<CamThinkModelInferResponse.ModelInferData.OutputData.Detection> detections = getDetections(camThinkModelInferResponse);
+        if (CollectionUtils.isEmpty(detections)) {
             return imageBase64;
         }
 
-        if (camThinkModelInferResponse.getData().getOutputs() == null) {
+        if (StringUtils.isEmpty(imageBase64)) {
             return imageBase64;
         }
 
-        if (camThinkModelInferResponse.getData().getOutputs().get(CamThinkModelInferResponse.ModelInferData.FIELD_DATA) == null) {
-            return imageBase64;
+        ImageDrawEngine engine = new ImageDrawEngine(ImageDrawConfig.getDefault(), resultImageEncoder);
+        engine.loadImageFromBase64(imageBase64);
+        addDetectionActions(engine, detections);
+        return engine.draw().outputImageBase64();
+    }
+
+    /**
+     * Render the result image of the device's infer history from its stored origin image and outputs.
+     */
+    public ImageSupport.ImageData renderResultImage(String deviceKey) throws Exception {
+        String inferHistoryJson = (String) entityValueServiceProvider.findValueByKey(EntitySupport.getDeviceEntityKey(deviceKey, Constants.IDENTIFIER_INFER_HISTORY));
+        InferHistory inferHistory = StringUtils.isEmpty(inferHistoryJson) ? null : JsonUtils.fromJSON(inferHistoryJson, InferHistory.class);
+        if (inferHistory == null || StringUtils.isEmpty(inferHistory.getOriginImage())) {
+            throw ServiceException.with(ServerErrorCode.INFER_HISTORY_NOT_FOUND.getErrorCode(), ServerErrorCode.INFER_HISTORY_NOT_FOUND.getErrorMessage()).build();
         }
-        String dataJson = JsonUtils.toJSON(camThinkModelInferResponse.getData().getOutputs().get(CamThinkModelInferResponse.ModelInferData.FIELD_DATA));
-        List<CamThinkModelInferResponse.ModelInferData.OutputData> data = JsonUtils.fromJSON(dataJson, new TypeReference<>() {});
-        if(CollectionUtils.isEmpty(data)) {
-            return imageBase64;
+
+        String originImage = inferHistory.getOriginImage();
+        String inferOutputsData = inferHistory.getInferOutputsData();
+        String cacheKey = RenderedImageCache.key(originImage, inferOutputsData);
+        return renderedImageCache.computeIfAbsent(cacheKey, () -> {
+            // Stored by the auto inference, either a resource of the platform or the image itself
+            ImageSupport.ImageData originImageData = ImageSupport.isUrl(originImage) ?
+                    imageFetcher.fetch(originImage) : ImageSupport.parseFromImageBase64(originImage);
+            Map<String, Object> outputs = StringUtils.isEmpty(inferOutputsData) ? null : JsonUtils.toMap(inferOutputsData);
+            return drawResultImage(originImageData, getDetections(outputs));
+        });
+    }
+
+    private ImageSupport.ImageData drawResultImage(ImageSupport.ImageData imageData, List<CamThinkModelInferResponse.ModelInferData.OutputData.Detection> detections) throws Exception {
+        if (CollectionUtils.isEmpty(detections)) {
+            return imageData;
         }
 
-        CamThinkModelInferResponse.ModelInferData.OutputData outputData = data.get(0);
-        if (CollectionUtils.isEmpty(outputData.getDetections())) {
-            return imageBase64;
+        if (imageData.getData() == null || imageData.getData().length == 0) {
+            return imageData;
         }
 
-        if (StringUtils.isEmpty(imageBase64)) {
-            return imageBase64;
+        ImageDrawEngine engine = new ImageDrawEngine(ImageDrawConfig.getDefault(), resultImageEncoder);
+        engine.loadImage(imageData.getData(), imageData.getImageSuffix());
+        addDetectionActions(engine, detections);
+        return engine.draw().outputImageData();
+    }
+
+    private List<CamThinkModelInferResponse.ModelInferData.OutputData.Detection> getDetections(CamThinkModelInferResponse camThinkModelInferResponse) {
+        if (camThinkModelInferResponse.getData() == null) {
+            return null;
         }
 
-        ImageDrawEngine engine = new ImageDrawEngine(ImageDrawConfig.getDefault());
-        engine.loadImageFromBase64(imageBase64);
+        return getDetections(camThinkModelInferResponse.getData().getOutputs());
+    }
+
+    private List<CamThinkModelInferResponse.ModelInferData.OutputData.Detection> getDetections(Map<String, Object> outputs) {
+        if (outputs == null) {
+            return null;
+        }
+
+        if (outputs.get(CamThinkModelInferResponse.ModelInferData.FIELD_DATA) == null) {
+            return null;
+        }
+        String dataJson = JsonUtils.toJSON(outputs.get(CamThinkModelInferResponse.ModelInferData.FIELD_DATA));
+        List<CamThinkModelInferResponse.ModelInferData.OutputData> data = JsonUtils.fromJSON(dataJson, new TypeReference<>() {});
+        if(CollectionUtils.isEmpty(data)) {
+            return null;
+        }
 
-        for (CamThinkModelInferResponse.ModelInferData.OutputData.Detection detection : outputData.getDetections()) {
+        return data.get(0).getDetections();
+    }
+
+    private void addDetectionActions(ImageDrawEngine engine, List<CamThinkModelInferResponse.ModelInferData.OutputData.Detection> detections) {
+        for (CamThinkModelInferResponse.ModelInferData.OutputData.Detection detection : detections) {
             List<Integer> box = detection.getBox();
             if (!CollectionUtils.isEmpty(box) && box.size() == CamThinkModelInferResponse.BOX_SIZE) {
                 String tag = getTag(detection.getCls(), detection.getConf());
@@ -429,8 +751,6 @@ public class CamThinkAiInferenceService {
                 engine.addAction(imageDrawPathAction);
             }
         }
-
-        return engine.draw().outputImageBase64();
     }
 
     private ImageDrawPathAction buildImageDrawPathAction(List<List<Double>> points, List<List<Integer>> skeleton) {
@@ -526,6 +846,7 @@ public class CamThinkAiInferenceService {
     private void initModels() {
         if (testConnection()) {
             long start = System.currentTimeMillis();
+            String tenantId = TenantContext.getTenantId();
             CamThinkModelListResponse camThinkModelListResponse = camThinkAiInferenceClient.getModels();
             if (camThinkModelListResponse == null) {
                 throwServiceNotReachableException();
@@ -572,15 +893,19 @@ public class CamThinkAiInferenceService {
                     .orTimeout(10, TimeUnit.SECONDS)
                     .thenRun(() -> {
                         try {
-                            futures.stream().map(CompletableFuture::join).forEach(entityServiceProvider::save);
+                            List<Entity> modelEntities = futures.stream().map(CompletableFuture::join).toList();
+                            modelEntities.forEach(entityServiceProvider::save);
+                            updateModelCatalog(tenantId, modelEntities);
                         } catch (Exception e) {
                             log.error("Error occurs while saving model entities", e);
+                            updateModelCatalog(tenantId, null);
                         }
                     })
                     .whenComplete((v, e) -> {
                         long duration = System.currentTimeMillis() - start;
                         if (e != null) {
                             log.error("initModels failed after {} ms", duration, e);
+                            updateModelCatalog(tenantId, null);
                         } else {
                             log.info("initModels succeeded in {} ms", duration);
                         }
@@ -620,6 +945,10 @@ public class CamThinkAiInferenceService {
             if (camThinkModelDetailResponse.getData() == null) {
                 return modelServiceEntity;
             }
+            Integer inputSize = getModelInputSize(camThinkModelDetailResponse.getData().getConfig());
+            if (inputSize != null) {
+                modelServiceEntity.setAttributes(Map.of(Constants.ATTRIBUTE_KEY_INPUT_SIZE, inputSize));
+            }
             if (CollectionUtils.isEmpty(camThinkModelDetailResponse.getData().getInputSchema())) {
                 return modelServiceEntity;
             }
@@ -651,6 +980,40 @@ public class CamThinkAiInferenceService {
         });
     }
 
+    /**
+     * Largest image dimension the model works at, from its config. Sizes are given as a number, a [width, height]
+     * list or a "640x640" string depending on the engine.
+     */
+    private Integer getModelInputSize(Map<String, Object> config) {
+        if (config == null) {
+            return null;
+        }
+
+        for (String key : Constants.MODEL_CONFIG_INPUT_SIZE_KEYS) {
+            Object value = config.get(key);
+            int inputSize = 0;
+            if (value instanceof Number number) {
+                inputSize = number.intValue();
+            } else if (value instanceof List<?> list) {
+                for (Object item : list) {
+                    if (item instanceof Number number) {
+                        inputSize = Math.max(inputSize, number.intValue());
+                    }
+                }
+            } else if (value instanceof String string) {
+                for (String item : string.split("[xX,*\\s]+")) {
+                    if (StringUtils.isNumeric(item)) {
+                        inputSize = Math.max(inputSize, Integer.parseInt(item));
+                    }
+                }
+            }
+            if (inputSize > 0) {
+                return inputSize;
+            }
+        }
+        return null;
+    }
+
     public ModelOutputSchemaResponse fetchModelDetail(String modelId) {
         ModelOutputSchemaResponse modelOutputSchemaResponse = new ModelOutputSchemaResponse();
         CamThinkModelDetailResponse camThinkModelDetailResponse;
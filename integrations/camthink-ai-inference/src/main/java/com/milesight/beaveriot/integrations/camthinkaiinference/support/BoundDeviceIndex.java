@@ -0,0 +1,97 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+import com.milesight.beaveriot.context.integration.model.Device;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable index of the devices bound to an image entity, ordered by device id, so that searching the bound devices
+ * neither loads every device of the tenant nor parses the image entity map. It is built from one version of the
+ * {@link ImageEntityIndex} and is stale once that index is replaced or one of its devices changed, after which it is
+ * rebuilt from the devices it already holds and only the others are loaded.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 22:20
+ **/
+public class BoundDeviceIndex {
+    private final ImageEntityIndex imageEntityIndex;
+    private final Map<Long, Device> devicesById;
+    private final List<Device> devices;
+    private final Set<String> deviceKeys;
+    // False once a device was dropped because it changed, until it is loaded again
+    private final boolean complete;
+
+    private BoundDeviceIndex(ImageEntityIndex imageEntityIndex, Map<Long, Device> devicesById, boolean complete) {
+        this.imageEntityIndex = imageEntityIndex;
+        this.devicesById = devicesById;
+        this.devices = devicesById.values().stream().sorted(Comparator.comparing(Device::getId)).toList();
+        this.deviceKeys = devices.stream().map(Device::getKey).collect(Collectors.toUnmodifiableSet());
+        this.complete = complete;
+    }
+
+    /**
+     * @param previous     index whose devices are reused while still bound, null to load every bound device
+     * @param deviceLoader loads the bound device with the given id, null if it no longer exists
+     */
+    public static BoundDeviceIndex of(ImageEntityIndex imageEntityIndex, BoundDeviceIndex previous, Function<Long, Device> deviceLoader) {
+        Map<Long, Device> devicesById = new HashMap<>();
+        for (Long deviceId : new HashSet<>(imageEntityIndex.getDeviceImageEntityMap().values())) {
+            Device device = previous != null ? previous.getDevice(deviceId) : null;
+            if (device == null) {
+                device = deviceLoader.apply(deviceId);
+            }
+            if (device != null) {
+                devicesById.put(deviceId, device);
+            }
+        }
+        return new BoundDeviceIndex(imageEntityIndex, Collections.unmodifiableMap(devicesById), true);
+    }
+
+    /**
+     * @return a copy of the index without the device, which is loaded again by the next rebuild
+     */
+    public BoundDeviceIndex withoutDevice(String deviceKey) {
+        if (!deviceKeys.contains(deviceKey)) {
+            return this;
+        }
+
+        Map<Long, Device> devicesById = new HashMap<>(this.devicesById);
+        devicesById.values().removeIf(device -> deviceKey.equals(device.getKey()));
+        return new BoundDeviceIndex(imageEntityIndex, Collections.unmodifiableMap(devicesById), false);
+    }
+
+    public boolean isUpToDate(ImageEntityIndex imageEntityIndex) {
+        return this.imageEntityIndex == imageEntityIndex && complete;
+    }
+
+    public ImageEntityIndex getImageEntityIndex() {
+        return imageEntityIndex;
+    }
+
+    public List<Device> getDevices() {
+        return devices;
+    }
+
+    public Device getDevice(Long deviceId) {
+        return devicesById.get(deviceId);
+    }
+
+    public boolean containsDeviceKey(String deviceKey) {
+        return deviceKeys.contains(deviceKey);
+    }
+
+    /**
+     * @param name case-insensitive part of the device name, empty to match every device
+     */
+    public List<Device> search(String name) {
+        if (StringUtils.isEmpty(name)) {
+            return devices;
+        }
+
+        String lowerCaseName = name.toLowerCase();
+        return devices.stream().filter(device -> device.getName() != null && device.getName().toLowerCase().contains(lowerCaseName)).toList();
+    }
+}
@@ -3,6 +3,7 @@ package com.milesight.beaveriot.integrations.camthinkaiinference.support;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.milesight.beaveriot.base.utils.JsonUtils;
 import com.milesight.beaveriot.context.integration.wrapper.AnnotatedEntityWrapper;
+import com.milesight.beaveriot.context.security.TenantContext;
 import com.milesight.beaveriot.integrations.camthinkaiinference.entity.CamThinkAiInferenceIntegrationEntities;
 
 import java.util.Map;
@@ -12,6 +13,8 @@ import java.util.Map;
  * create: 2025/6/19 8:43
  **/
 public class DataCenter {
+    private static final TenantVersionedCache<ImageEntityIndex> IMAGE_ENTITY_INDEX_CACHE = new TenantVersionedCache<>();
+
     public static Map<String, Long> loadDeviceImageEntityMap() {
         AnnotatedEntityWrapper<CamThinkAiInferenceIntegrationEntities> wrapper = new AnnotatedEntityWrapper<>();
         String jsonString = (String) wrapper.getValue(CamThinkAiInferenceIntegrationEntities::getDeviceImageEntityMap).orElse("{}");
@@ -25,31 +28,42 @@ public class DataCenter {
     }
 
     public static Long getDeviceIdByImageEntityKey(String imageEntityKey) {
-        Map<String, Long> deviceImageEntityMap = loadDeviceImageEntityMap();
-        return deviceImageEntityMap.get(imageEntityKey);
+        return getImageEntityIndex().getDeviceId(imageEntityKey);
     }
+
     public static void removeDeviceFromImageEntityMap(Long deviceId) {
         Map<String, Long> deviceImageEntityMap = loadDeviceImageEntityMap();
-        deviceImageEntityMap.entrySet().removeIf(entry -> entry.getValue().equals(deviceId));
-        saveDeviceImageEntityMap(deviceImageEntityMap);
+        if (deviceImageEntityMap.entrySet().removeIf(entry -> entry.getValue().equals(deviceId))) {
+            saveDeviceImageEntityMap(deviceImageEntityMap);
+        }
     }
 
     public static boolean isDeviceInDeviceImageEntityMap(Long deviceId) {
-        Map<String, Long> deviceImageEntityMap = loadDeviceImageEntityMap();
-        return deviceImageEntityMap.containsValue(deviceId);
+        return getImageEntityIndex().containsDevice(deviceId);
     }
 
     public static String getImageEntityKeyByDeviceId(Long deviceId) {
-        Map<String, Long> deviceImageEntityMap = loadDeviceImageEntityMap();
-        return deviceImageEntityMap.entrySet().stream()
-                .filter(entry -> entry.getValue().equals(deviceId))
-                .map(Map.Entry::getKey)
-                .findFirst()
-                .orElse(null);
+        return getImageEntityIndex().getImageEntityKey(deviceId);
+    }
+
+    /**
+     * Cached image entity index of the current tenant, rebuilt only when the image entity map changes.
+     */
+    public static ImageEntityIndex getImageEntityIndex() {
+        return IMAGE_ENTITY_INDEX_CACHE.get(TenantContext.getTenantId(), () -> ImageEntityIndex.of(loadDeviceImageEntityMap()));
+    }
+
+    /**
+     * Drop the cached image entity index of a tenant, used when another node changed the image entity map.
+     */
+    public static void invalidateImageEntityIndexCache(String tenantId) {
+        IMAGE_ENTITY_INDEX_CACHE.invalidate(tenantId);
     }
 
     private static void saveDeviceImageEntityMap(Map<String, Long> deviceImageEntityMap) {
         AnnotatedEntityWrapper<CamThinkAiInferenceIntegrationEntities> wrapper = new AnnotatedEntityWrapper<>();
         wrapper.saveValue(CamThinkAiInferenceIntegrationEntities::getDeviceImageEntityMap, JsonUtils.toJSON(deviceImageEntityMap));
+        ImageEntityIndex imageEntityIndex = ImageEntityIndex.of(deviceImageEntityMap);
+        IMAGE_ENTITY_INDEX_CACHE.update(TenantContext.getTenantId(), existing -> imageEntityIndex);
     }
 }
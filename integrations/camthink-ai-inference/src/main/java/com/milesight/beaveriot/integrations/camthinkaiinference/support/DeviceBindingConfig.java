@@ -0,0 +1,54 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+import com.milesight.beaveriot.integrations.camthinkaiinference.model.RegionOfInterest;
+import lombok.Getter;
+
+import java.util.*;
+
+/**
+ * Immutable binding configuration of a device: the bound model, its infer inputs and the device entities the
+ * inference results are written to.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 20:20
+ **/
+@Getter
+public class DeviceBindingConfig {
+    private final String modelId;
+    private final String modelIdentifier;
+    private final Map<String, Object> inferInputs;
+    private final String inferHistoryEntityKey;
+    private final Map<String, String> outputEntityKeys;
+    // Null for the default threshold of the change gate
+    private final Integer changeThreshold;
+    // Empty to infer the whole frame
+    private final List<RegionOfInterest> regionsOfInterest;
+
+    private DeviceBindingConfig(String modelId, String modelIdentifier, Map<String, Object> inferInputs, String inferHistoryEntityKey, Map<String, String> outputEntityKeys, Integer changeThreshold, List<RegionOfInterest> regionsOfInterest) {
+        this.modelId = modelId;
+        this.modelIdentifier = modelIdentifier;
+        this.inferInputs = inferInputs;
+        this.inferHistoryEntityKey = inferHistoryEntityKey;
+        this.outputEntityKeys = outputEntityKeys;
+        this.changeThreshold = changeThreshold;
+        this.regionsOfInterest = regionsOfInterest;
+    }
+
+    /**
+     * @param inferHistoryEntityKey key of the infer history entity, null if the device has none
+     * @param outputFields output fields of the model that have an entity under the model entity of the device
+     */
+    public static DeviceBindingConfig of(String deviceKey, String modelId, String modelIdentifier, Map<String, Object> inferInputs, String inferHistoryEntityKey, Set<String> outputFields, Integer changeThreshold, List<RegionOfInterest> regionsOfInterest) {
+        Map<String, String> outputEntityKeys = new HashMap<>();
+        outputFields.forEach(field -> outputEntityKeys.put(field, EntitySupport.getDeviceEntityChildrenKey(deviceKey, modelIdentifier, field)));
+        return new DeviceBindingConfig(modelId, modelIdentifier, Collections.unmodifiableMap(new HashMap<>(inferInputs)), inferHistoryEntityKey, Collections.unmodifiableMap(outputEntityKeys), changeThreshold,
+                regionsOfInterest == null ? List.of() : Collections.unmodifiableList(new ArrayList<>(regionsOfInterest)));
+    }
+
+    /**
+     * @return key of the entity the output field is written to, null if the device has no entity for it
+     */
+    public String getOutputEntityKey(String field) {
+        return outputEntityKeys.get(field);
+    }
+}
@@ -0,0 +1,92 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.image.PerceptualHash;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Skips the frames of a device that look like the last frame inferred for it: the perceptual hashes of the two
+ * frames are fewer bits apart than the change threshold of the binding. Only frames inferred successfully are
+ * remembered, so a scene that drifts slowly is still inferred once it drifted far enough, a frame whose inference
+ * failed is retried with the next similar frame, and the first frame after the binding changed is always inferred.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 21:20
+ **/
+@Slf4j
+@Component
+public class FrameChangeGate {
+    private final int defaultThreshold;
+    private final Map<Long, Frame> lastInferredFrames = new ConcurrentHashMap<>();
+    private final Counter skippedCounter;
+
+    public FrameChangeGate(@Value("${camthink-ai-inference.change-gate.threshold:0}") int defaultThreshold,
+                           ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.defaultThreshold = defaultThreshold;
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        this.skippedCounter = Counter.builder("camthink-ai-inference.change-gate.skipped")
+                .description("Frames not inferred since they look like the last inferred frame of their device")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the frame to {@link #recordInferred record} once inferred if it changed enough to be inferred, null
+     * otherwise
+     */
+    public Frame check(Long deviceId, byte[] imageData, DeviceBindingConfig bindingConfig) {
+        Integer threshold = bindingConfig.getChangeThreshold();
+        int effectiveThreshold = threshold == null ? defaultThreshold : threshold;
+        if (effectiveThreshold <= 0) {
+            return new Frame(bindingConfig, null);
+        }
+
+        Long hash;
+        try {
+            hash = PerceptualHash.of(imageData);
+        } catch (Exception e) {
+            log.warn("Hash frame of device {} failed: {}", deviceId, e.getMessage());
+            hash = null;
+        }
+        Frame frame = new Frame(bindingConfig, hash);
+        if (hash == null) {
+            return frame;
+        }
+
+        Frame lastFrame = lastInferredFrames.get(deviceId);
+        // Binding configurations are replaced, never mutated, when the binding changes
+        boolean changed = lastFrame == null || lastFrame.bindingConfig() != bindingConfig ||
+                PerceptualHash.distance(lastFrame.hash(), hash) >= effectiveThreshold;
+        if (!changed) {
+            skippedCounter.increment();
+            return null;
+        }
+        return frame;
+    }
+
+    /**
+     * Remember the frame as the last inferred frame of the device, called once its inference succeeded.
+     */
+    public void recordInferred(Long deviceId, Frame frame) {
+        if (frame.hash() != null) {
+            lastInferredFrames.put(deviceId, frame);
+        }
+    }
+
+    public void forget(Long deviceId) {
+        lastInferredFrames.remove(deviceId);
+    }
+
+    /**
+     * @param hash perceptual hash of the frame, null if the binding does not gate frames or the frame cannot be hashed
+     */
+    public record Frame(DeviceBindingConfig bindingConfig, Long hash) {
+    }
+}
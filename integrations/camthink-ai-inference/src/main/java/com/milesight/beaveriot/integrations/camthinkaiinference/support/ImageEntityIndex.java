@@ -0,0 +1,53 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable index of the image entities bound to devices, looked up in both directions with a single hash lookup.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 17:30
+ **/
+public class ImageEntityIndex {
+    private static final ImageEntityIndex EMPTY = new ImageEntityIndex(Map.of(), Map.of());
+    private final Map<String, Long> deviceIdByImageEntityKey;
+    private final Map<Long, String> imageEntityKeyByDeviceId;
+
+    private ImageEntityIndex(Map<String, Long> deviceIdByImageEntityKey, Map<Long, String> imageEntityKeyByDeviceId) {
+        this.deviceIdByImageEntityKey = deviceIdByImageEntityKey;
+        this.imageEntityKeyByDeviceId = imageEntityKeyByDeviceId;
+    }
+
+    public static ImageEntityIndex of(Map<String, Long> deviceImageEntityMap) {
+        if (deviceImageEntityMap == null || deviceImageEntityMap.isEmpty()) {
+            return EMPTY;
+        }
+
+        Map<String, Long> deviceIdByImageEntityKey = new HashMap<>(deviceImageEntityMap);
+        Map<Long, String> imageEntityKeyByDeviceId = new HashMap<>();
+        deviceIdByImageEntityKey.forEach((imageEntityKey, deviceId) -> imageEntityKeyByDeviceId.putIfAbsent(deviceId, imageEntityKey));
+        return new ImageEntityIndex(Collections.unmodifiableMap(deviceIdByImageEntityKey), Collections.unmodifiableMap(imageEntityKeyByDeviceId));
+    }
+
+    public Map<String, Long> getDeviceImageEntityMap() {
+        return deviceIdByImageEntityKey;
+    }
+
+    public boolean isEmpty() {
+        return deviceIdByImageEntityKey.isEmpty();
+    }
+
+    public Long getDeviceId(String imageEntityKey) {
+        return deviceIdByImageEntityKey.get(imageEntityKey);
+    }
+
+    public String getImageEntityKey(Long deviceId) {
+        return imageEntityKeyByDeviceId.get(deviceId);
+    }
+
+    public boolean containsDevice(Long deviceId) {
+        return imageEntityKeyByDeviceId.containsKey(deviceId);
+    }
+}
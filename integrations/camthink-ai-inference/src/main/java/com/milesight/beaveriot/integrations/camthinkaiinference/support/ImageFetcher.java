@@ -0,0 +1,121 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Downloads the images of URL image entities with one shared HTTP client, so that connections (HTTP/2 where the
+ * server supports it) are pooled across inferences. Bodies are read straight into the image bytes, up to a maximum
+ * size.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 18:45
+ **/
+@Slf4j
+@Component
+public class ImageFetcher {
+    private static final String METER_PREFIX = "camthink-ai-inference.image-fetch";
+    private static final String DEFAULT_CONTENT_TYPE = "image/jpeg";
+    private static final int READ_BUFFER_SIZE = 8192;
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+    private final long maxSizeBytes;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary bytesSummary;
+
+    public ImageFetcher(@Value("${camthink-ai-inference.image-fetch.connect-timeout:10s}") Duration connectTimeout,
+                        @Value("${camthink-ai-inference.image-fetch.read-timeout:60s}") Duration readTimeout,
+                        @Value("${camthink-ai-inference.image-fetch.max-size:20MB}") DataSize maxSize,
+                        ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+        this.readTimeout = readTimeout;
+        this.maxSizeBytes = maxSize.toBytes();
+        this.meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        this.bytesSummary = DistributionSummary.builder(METER_PREFIX + ".bytes")
+                .description("Size of the downloaded images")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public ImageSupport.ImageData fetch(String imageUrl) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(imageUrl))
+                .timeout(readTimeout)
+                .GET()
+                .build();
+
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    outcome = "status_" + response.statusCode();
+                    throw new IOException("Fetch image failed with status " + response.statusCode() + ": " + imageUrl);
+                }
+
+                long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+                if (contentLength > maxSizeBytes) {
+                    outcome = "too_large";
+                    throw new IOException("Image of " + contentLength + " bytes exceeds the maximum size: " + imageUrl);
+                }
+
+                byte[] data = read(body, contentLength);
+                if (data == null) {
+                    outcome = "too_large";
+                    throw new IOException("Image exceeds the maximum size of " + maxSizeBytes + " bytes: " + imageUrl);
+                }
+
+                outcome = "success";
+                bytesSummary.record(data.length);
+                String contentType = response.headers().firstValue("Content-Type").orElse(DEFAULT_CONTENT_TYPE);
+                return ImageSupport.toImageData(data, contentType);
+            }
+        } finally {
+            Timer.builder(METER_PREFIX + ".latency")
+                    .description("Time to download an image")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * @return the body, or null if it is larger than the maximum size
+     */
+    private byte[] read(InputStream body, long contentLength) throws IOException {
+        int initialSize = contentLength > 0 ? (int) contentLength : READ_BUFFER_SIZE;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(initialSize);
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            total += read;
+            if (total > maxSizeBytes) {
+                return null;
+            }
+            bos.write(buffer, 0, read);
+        }
+        return bos.toByteArray();
+    }
+}
@@ -2,15 +2,18 @@ package com.milesight.beaveriot.integrations.camthinkaiinference.support;
 
 import lombok.Data;
 
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.MessageFormat;
-import java.time.Duration;
 import java.util.Base64;
 
 /**
@@ -26,31 +29,6 @@ public class ImageSupport {
         return content != null && (content.startsWith("http://") || content.startsWith("https://"));
     }
 
-    public static ImageResult getImageBase64FromUrl(String imageUrl) throws Exception {
-        ImageResult result = new ImageResult();
-        HttpClient client = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(imageUrl))
-                .timeout(Duration.ofSeconds(60))
-                .build();
-
-        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
-
-        if (response.statusCode() == 200) {
-            String contentType = response.headers().firstValue("Content-Type").orElse("image/jpeg");
-            String fileExtension = getFileExtensionFromMimeType(contentType);
-
-            String imageBase64 = Base64.getEncoder().encodeToString(response.body());
-            result.setImageBase64(MessageFormat.format(IMAGE_BASE64_HEADER_FORMAT, contentType) + imageBase64);
-            result.setImageSuffix(fileExtension);
-            return result;
-        }
-        return result;
-    }
-
     @SuppressWarnings("unused")
     public static ImageResult getImageBase64FromPath(String filePath) throws Exception {
         ImageResult result = new ImageResult();
@@ -120,6 +98,43 @@ public class ImageSupport {
         return imageSuffix;
     }
 
+    /**
+     * Image data of raw image bytes, described the same way as {@link #parseFromImageBase64} does.
+     */
+    public static ImageData toImageData(byte[] data, String mimeType) {
+        String imageSuffix = DEFAULT_IMAGE_SUFFIX;
+        if (mimeType != null && mimeType.startsWith("image/")) {
+            int parametersIndex = mimeType.indexOf(';');
+            imageSuffix = mimeType.substring("image/".length(), parametersIndex < 0 ? mimeType.length() : parametersIndex).trim();
+        }
+
+        ImageData imageData = new ImageData();
+        imageData.setImageSuffix(imageSuffix);
+        imageData.setContentType(MessageFormat.format(CONTENT_TYPE_FORMAT, imageSuffix));
+        imageData.setContentLength(data.length);
+        imageData.setData(data);
+        return imageData;
+    }
+
+    public static String toImageBase64(ImageData imageData) {
+        return MessageFormat.format(IMAGE_BASE64_HEADER_FORMAT, imageData.getContentType()) + Base64.getEncoder().encodeToString(imageData.getData());
+    }
+
+    public static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(DEFAULT_IMAGE_SUFFIX).next();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(bos)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bos.toByteArray();
+    }
+
     public static ImageData parseFromImageBase64(String imageBase64) {
         String[] extractedData = ImageSupport.extractImageBase64(imageBase64);
         String imageBase64Header = extractedData[0];
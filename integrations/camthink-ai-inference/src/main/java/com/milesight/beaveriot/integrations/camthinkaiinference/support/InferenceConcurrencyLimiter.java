@@ -0,0 +1,252 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+import com.milesight.beaveriot.base.exception.ServiceException;
+import com.milesight.beaveriot.integrations.camthinkaiinference.api.enums.ServerErrorCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Limits the inference requests in flight to each model of the inference server. The limit adapts AIMD style: it
+ * grows by one for every limit's worth of successful requests and is halved when the server answers busy, rate
+ * limited or internal error, so requests run near what the server can take. Requests over the limit wait in a
+ * bounded queue and fail when it is full or their wait times out. Queued requests are sent from the thread that
+ * completed another request, so every request is sent under the tenant it was submitted with. Queued requests whose
+ * future was cancelled or completed by the caller meanwhile are skipped.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 20:40
+ **/
+@Slf4j
+@Component
+public class InferenceConcurrencyLimiter {
+    private static final String METER_PREFIX = "camthink-ai-inference.infer-limit";
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final Set<String> OVERLOAD_ERROR_CODES = Set.of(
+            ServerErrorCode.SERVER_RATE_LIMIT_EXCEEDED.getErrorCode(),
+            ServerErrorCode.SERVER_MODEL_WORKER_BUSY.getErrorCode(),
+            ServerErrorCode.SERVER_INTERNAL_SERVER_ERROR.getErrorCode());
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueSize;
+    private final long queueTimeoutMillis;
+    private final Map<ModelKey, ModelLimit> modelLimits = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timeoutScheduler;
+    // Gauges by model id, shared by the tenants using the model
+    private final Map<String, ModelMeters> modelMeters = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Counter queueFullCounter;
+    private final Counter queueTimeoutCounter;
+
+    public InferenceConcurrencyLimiter(@Value("${camthink-ai-inference.infer-limit.initial:8}") int initialLimit,
+                                       @Value("${camthink-ai-inference.infer-limit.min:1}") int minLimit,
+                                       @Value("${camthink-ai-inference.infer-limit.max:64}") int maxLimit,
+                                       @Value("${camthink-ai-inference.infer-limit.queue-size:200}") int maxQueueSize,
+                                       @Value("${camthink-ai-inference.infer-limit.queue-timeout:30s}") Duration queueTimeout,
+                                       ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.initialLimit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.maxQueueSize = Math.max(0, maxQueueSize);
+        this.queueTimeoutMillis = queueTimeout.toMillis();
+        this.timeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, METER_PREFIX + "-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        this.queueFullCounter = rejectedCounter(meterRegistry, "queue_full");
+        this.queueTimeoutCounter = rejectedCounter(meterRegistry, "queue_timeout");
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder(METER_PREFIX + ".rejected")
+                .description("Inference requests failed without being sent")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private ModelMeters getModelMeters(String modelId) {
+        return modelMeters.computeIfAbsent(modelId, key -> {
+            ModelMeters meters = new ModelMeters(new AtomicInteger(), new AtomicInteger());
+            Gauge.builder(METER_PREFIX + ".in-flight", meters.inFlight(), AtomicInteger::get)
+                    .description("Inference requests sent and not answered yet")
+                    .tag("model", key)
+                    .register(meterRegistry);
+            Gauge.builder(METER_PREFIX + ".queued", meters.queued(), AtomicInteger::get)
+                    .description("Inference requests waiting for the limit of their model")
+                    .tag("model", key)
+                    .register(meterRegistry);
+            return meters;
+        });
+    }
+
+    /**
+     * Send the request once the model has room for it. The returned future fails with a
+     * {@link RejectedExecutionException} if the request could not be sent.
+     */
+    public <T> CompletableFuture<T> execute(String tenantId, String modelId, Supplier<CompletableFuture<T>> request) {
+        ModelLimit modelLimit = modelLimits.computeIfAbsent(new ModelKey(tenantId, modelId), key -> new ModelLimit(key, initialLimit, getModelMeters(modelId)));
+        Waiter<T> waiter = new Waiter<>(request, new CompletableFuture<>());
+        modelLimit.acquire(waiter);
+        return waiter.future();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        timeoutScheduler.shutdownNow();
+    }
+
+    private static boolean isOverload(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof ServiceException serviceException && OVERLOAD_ERROR_CODES.contains(serviceException.getErrorCode());
+    }
+
+    private record ModelKey(String tenantId, String modelId) {
+    }
+
+    private record ModelMeters(AtomicInteger inFlight, AtomicInteger queued) {
+    }
+
+    private record Waiter<T>(Supplier<CompletableFuture<T>> request, CompletableFuture<T> future) {
+    }
+
+    private class ModelLimit {
+        private final ModelKey key;
+        private final AtomicInteger inFlight;
+        private final AtomicInteger queued;
+        private final Deque<Waiter<?>> waiters = new ArrayDeque<>();
+        private double limit;
+        private int running;
+        // Failures of requests sent before the last decrease were caused by the old limit and do not decrease again
+        private long lastDecreaseNanos;
+
+        ModelLimit(ModelKey key, int initialLimit, ModelMeters meters) {
+            this.key = key;
+            this.inFlight = meters.inFlight();
+            this.queued = meters.queued();
+            this.limit = initialLimit;
+            this.lastDecreaseNanos = System.nanoTime();
+        }
+
+        void acquire(Waiter<?> waiter) {
+            synchronized (this) {
+                if (running >= (int) limit || !waiters.isEmpty()) {
+                    if (waiters.size() >= maxQueueSize) {
+                        removeAbandonedWaiters();
+                    }
+                    if (waiters.size() >= maxQueueSize) {
+                        queueFullCounter.increment();
+                        waiter.future().completeExceptionally(new RejectedExecutionException("Inference queue of model " + key.modelId() + " is full"));
+                        return;
+                    }
+                    waiters.addLast(waiter);
+                    queued.incrementAndGet();
+                    scheduleTimeout(waiter);
+                    return;
+                }
+                running++;
+            }
+            send(waiter);
+        }
+
+        // Guarded by this
+        private void removeAbandonedWaiters() {
+            int before = waiters.size();
+            waiters.removeIf(waiter -> waiter.future().isDone());
+            queued.addAndGet(waiters.size() - before);
+        }
+
+        // Guarded by this, null if no waiter is left whose caller still waits for it
+        private Waiter<?> pollWaiter() {
+            Waiter<?> waiter;
+            while ((waiter = waiters.pollFirst()) != null) {
+                queued.decrementAndGet();
+                if (!waiter.future().isDone()) {
+                    return waiter;
+                }
+            }
+            return null;
+        }
+
+        private void scheduleTimeout(Waiter<?> waiter) {
+            try {
+                timeoutScheduler.schedule(() -> {
+                    synchronized (this) {
+                        if (!waiters.remove(waiter)) {
+                            return;
+                        }
+                        queued.decrementAndGet();
+                    }
+                    queueTimeoutCounter.increment();
+                    waiter.future().completeExceptionally(new RejectedExecutionException("Inference of model " + key.modelId() + " waited longer than " + queueTimeoutMillis + " ms"));
+                }, queueTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down, the request waits without a timeout
+            }
+        }
+
+        private <T> void send(Waiter<T> waiter) {
+            long sentNanos = System.nanoTime();
+            inFlight.incrementAndGet();
+            CompletableFuture<T> response;
+            try {
+                response = TenantSupport.callWithTenant(key.tenantId(), waiter.request());
+            } catch (Exception e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            response.whenComplete((result, e) -> {
+                inFlight.decrementAndGet();
+                release(sentNanos, e != null && isOverload(e));
+                if (e != null) {
+                    waiter.future().completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                } else {
+                    waiter.future().complete(result);
+                }
+            });
+        }
+
+        private void release(long sentNanos, boolean overload) {
+            Waiter<?> next;
+            synchronized (this) {
+                running--;
+                if (overload) {
+                    if (sentNanos - lastDecreaseNanos >= 0) {
+                        limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+                        lastDecreaseNanos = System.nanoTime();
+                        log.warn("Inference server overloaded, limit of model {} decreased to {}", key.modelId(), (int) limit);
+                    }
+                } else {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+
+                if (running >= (int) limit) {
+                    return;
+                }
+                next = pollWaiter();
+                if (next == null) {
+                    return;
+                }
+                running++;
+            }
+            send(next);
+        }
+    }
+}
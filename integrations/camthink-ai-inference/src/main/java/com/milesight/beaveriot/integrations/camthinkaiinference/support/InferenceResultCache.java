@@ -0,0 +1,134 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+import com.milesight.beaveriot.base.utils.JsonUtils;
+import com.milesight.beaveriot.integrations.camthinkaiinference.api.model.response.CamThinkModelInferResponse;
+import com.milesight.beaveriot.integrations.camthinkaiinference.model.RegionOfInterest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.Getter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional cache of inference results keyed by the model, the infer inputs, the regions of interest, the input size
+ * the image is downscaled to and the content of the image, so that
+ * identical frames of fixed cameras reuse the result and the result image of the first one instead of being inferred
+ * and drawn again. Entries expire after a TTL and the least recently used ones are evicted over the size limit, which
+ * is estimated from the size of the outputs.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 21:00
+ **/
+@Component
+public class InferenceResultCache {
+    private static final String METER_PREFIX = "camthink-ai-inference.result-cache";
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+    @Getter
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final long maxBytes;
+    private final Map<String, CachedResult> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public InferenceResultCache(@Value("${camthink-ai-inference.result-cache.enabled:false}") boolean enabled,
+                                @Value("${camthink-ai-inference.result-cache.ttl:10m}") Duration ttl,
+                                @Value("${camthink-ai-inference.result-cache.max-size:16MB}") DataSize maxSize,
+                                ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.enabled = enabled;
+        this.ttlMillis = ttl.toMillis();
+        this.maxBytes = maxSize.toBytes();
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        this.hitCounter = Counter.builder(METER_PREFIX + ".lookups")
+                .description("Inference result cache lookups")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder(METER_PREFIX + ".lookups")
+                .description("Inference result cache lookups")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param tenantId          results are never shared between tenants
+     * @param inputs            infer inputs of the binding, without the image
+     * @param regionsOfInterest regions the image is cropped to, since the outputs only cover them
+     * @param inputSize         size the image is downscaled to, since the outputs depend on the resolution
+     * @param imageData         content of the image
+     */
+    public static String key(String tenantId, String modelId, Map<String, Object> inputs, List<RegionOfInterest> regionsOfInterest,
+                             Integer inputSize, byte[] imageData) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String source : new String[]{tenantId, modelId, JsonUtils.toJSON(inputs), JsonUtils.toJSON(regionsOfInterest), String.valueOf(inputSize)}) {
+                digest.update(String.valueOf(source).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            digest.update(imageData);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized CachedResult get(String key) {
+        CachedResult result = results.get(key);
+        if (result != null && result.getExpiresAt() < System.currentTimeMillis()) {
+            results.remove(key);
+            totalBytes -= result.getSize();
+            result = null;
+        }
+        (result == null ? missCounter : hitCounter).increment();
+        return result;
+    }
+
+    /**
+     * @param resultImage resource URL of the result image, empty if it was not drawn
+     */
+    public synchronized void put(String key, CamThinkModelInferResponse response, String resultImage) {
+        long size = ENTRY_OVERHEAD_BYTES + JsonUtils.toJSON(response).length() * 2L + resultImage.length() * 2L;
+        if (size > maxBytes) {
+            return;
+        }
+
+        CachedResult previous = results.put(key, new CachedResult(response, resultImage, size, System.currentTimeMillis() + ttlMillis));
+        totalBytes += size - (previous == null ? 0 : previous.getSize());
+        Iterator<CachedResult> iterator = results.values().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            totalBytes -= iterator.next().getSize();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Shared between the frames that hit it, must not be mutated.
+     */
+    @Getter
+    public static class CachedResult {
+        private final CamThinkModelInferResponse response;
+        private final String resultImage;
+        private final long size;
+        private final long expiresAt;
+
+        private CachedResult(CamThinkModelInferResponse response, String resultImage, long size, long expiresAt) {
+            this.response = response;
+            this.resultImage = resultImage;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
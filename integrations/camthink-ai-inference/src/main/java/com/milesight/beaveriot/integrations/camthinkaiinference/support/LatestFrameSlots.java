@@ -0,0 +1,132 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One inference slot per device with latest-frame-wins semantics: at most one frame of a device is inferred at a
+ * time, and a frame arriving meanwhile replaces the one waiting, which is dropped. A device therefore never has
+ * more than one frame waiting, and the result always belongs to a recent frame however slow the model is.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 17:50
+ **/
+@Slf4j
+public class LatestFrameSlots<K> {
+    private final Executor executor;
+    private final Map<K, Slot<K>> slots = new ConcurrentHashMap<>();
+    private final Counter supersededCounter;
+    private final Counter rejectedCounter;
+    private final Timer waitTimer;
+
+    public LatestFrameSlots(String name, Executor executor, MeterRegistry meterRegistry) {
+        this.executor = executor;
+        this.supersededCounter = Counter.builder(name + ".dropped")
+                .tag("reason", "superseded")
+                .description("Frames replaced by a newer frame of the same device before being inferred")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder(name + ".dropped")
+                .tag("reason", "rejected")
+                .description("Frames dropped because the executor was full or shut down")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder(name + ".wait")
+                .description("Time from frame arrival to the start of its inference")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run the task once the slot of the key is free, unless a newer task is submitted for the key before.
+     */
+    public void submit(K key, Runnable task) {
+        Slot<K> slot = slots.compute(key, (k, existing) -> {
+            Slot<K> openSlot = existing == null ? new Slot<>(k) : existing;
+            // A slot closed while its frame is still inferred is reused, so the new frame cannot overlap it
+            openSlot.closed = false;
+            return openSlot;
+        });
+        if (slot.pending.getAndSet(new Frame(task, System.nanoTime())) != null) {
+            supersededCounter.increment();
+        }
+        schedule(slot);
+    }
+
+    /**
+     * Drop the waiting frame of the key and close its slot, the frame being inferred still completes. A busy slot is
+     * only removed once its frame completed, so that a frame submitted meanwhile still waits for it.
+     */
+    public void remove(K key) {
+        slots.computeIfPresent(key, (k, slot) -> {
+            slot.closed = true;
+            if (slot.pending.getAndSet(null) != null) {
+                supersededCounter.increment();
+            }
+            return slot.running.get() ? slot : null;
+        });
+    }
+
+    public double getDroppedCount() {
+        return supersededCounter.count() + rejectedCounter.count();
+    }
+
+    private void schedule(Slot<K> slot) {
+        if (!slot.running.compareAndSet(false, true)) {
+            // The running frame picks the pending one up when it completes
+            return;
+        }
+
+        try {
+            executor.execute(() -> drain(slot));
+        } catch (RejectedExecutionException e) {
+            slot.running.set(false);
+            if (slot.pending.getAndSet(null) != null) {
+                rejectedCounter.increment();
+            }
+            log.warn("Inference executor is full, frame dropped");
+        }
+    }
+
+    private void drain(Slot<K> slot) {
+        try {
+            Frame frame = slot.pending.getAndSet(null);
+            if (frame != null) {
+                waitTimer.record(System.nanoTime() - frame.arrivedAt(), TimeUnit.NANOSECONDS);
+                frame.task().run();
+            }
+        } catch (Exception e) {
+            log.error("Inference task error: ", e);
+        } finally {
+            slot.running.set(false);
+            if (slot.closed) {
+                slots.computeIfPresent(slot.key, (k, existing) -> existing == slot && slot.closed && !slot.running.get() ? null : existing);
+            } else if (slot.pending.get() != null) {
+                // A frame submitted while this one was running found the slot busy and did not schedule itself
+                schedule(slot);
+            }
+        }
+    }
+
+    private static class Slot<K> {
+        private final K key;
+        private final AtomicBoolean running = new AtomicBoolean(false);
+        private final AtomicReference<Frame> pending = new AtomicReference<>();
+        private volatile boolean closed;
+
+        Slot(K key) {
+            this.key = key;
+        }
+    }
+
+    private record Frame(Runnable task, long arrivedAt) {
+    }
+}
@@ -0,0 +1,52 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+import com.milesight.beaveriot.context.integration.model.Entity;
+import com.milesight.beaveriot.integrations.camthinkaiinference.constant.Constants;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable catalog of the models of a tenant, built from the model service entities.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 21:40
+ **/
+public class ModelCatalog {
+    private final Map<String, String> modelNames;
+    private final Map<String, Integer> inputSizes;
+
+    private ModelCatalog(Map<String, String> modelNames, Map<String, Integer> inputSizes) {
+        this.modelNames = modelNames;
+        this.inputSizes = inputSizes;
+    }
+
+    public static ModelCatalog of(List<Entity> entities) {
+        Map<String, String> modelNames = new HashMap<>();
+        Map<String, Integer> inputSizes = new HashMap<>();
+        entities.stream().filter(entity -> entity.getIdentifier().startsWith(Constants.IDENTIFIER_MODEL_PREFIX)).forEach(entity -> {
+            String modelId = entity.getIdentifier().substring(Constants.IDENTIFIER_MODEL_PREFIX.length());
+            modelNames.put(modelId, entity.getName());
+            if (entity.getAttributes() != null && entity.getAttributes().get(Constants.ATTRIBUTE_KEY_INPUT_SIZE) instanceof Number inputSize) {
+                inputSizes.put(modelId, inputSize.intValue());
+            }
+        });
+        return new ModelCatalog(Collections.unmodifiableMap(modelNames), Collections.unmodifiableMap(inputSizes));
+    }
+
+    /**
+     * Model id to model name.
+     */
+    public Map<String, String> getModelNames() {
+        return modelNames;
+    }
+
+    /**
+     * @return the largest image dimension the model works at, null if the model does not tell
+     */
+    public Integer getInputSize(String modelId) {
+        return inputSizes.get(modelId);
+    }
+}
@@ -0,0 +1,32 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+import com.milesight.beaveriot.context.security.TenantContext;
+
+import java.util.function.Supplier;
+
+/**
+ * author: Luxb
+ * create: 2026/10/19 13:10
+ **/
+public class TenantSupport {
+    private TenantSupport() {
+    }
+
+    /**
+     * Call the supplier under the tenant and restore the tenant of the current thread afterwards, for work run on
+     * shared threads such as the HTTP client's.
+     */
+    public static <T> T callWithTenant(String tenantId, Supplier<T> supplier) {
+        String previousTenantId = TenantContext.tryGetTenantId().orElse(null);
+        TenantContext.setTenantId(tenantId);
+        try {
+            return supplier.get();
+        } finally {
+            if (previousTenantId == null) {
+                TenantContext.clear();
+            } else {
+                TenantContext.setTenantId(previousTenantId);
+            }
+        }
+    }
+}
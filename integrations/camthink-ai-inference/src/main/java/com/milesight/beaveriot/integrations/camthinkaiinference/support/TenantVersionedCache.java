@@ -0,0 +1,10 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+/**
+ * Per-tenant {@link VersionedCache}, keyed by tenant id.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 11:40
+ **/
+public class TenantVersionedCache<V> extends VersionedCache<String, V> {
+}
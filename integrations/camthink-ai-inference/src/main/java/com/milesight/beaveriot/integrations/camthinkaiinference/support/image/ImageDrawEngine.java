@@ -34,9 +34,10 @@ public class ImageDrawEngine {
     private BufferedImage image;
     private Graphics2D g2d;
     private String imageBase64Header;
-    private String outputBase64Data;
+    private byte[] outputData;
     private List<ImageDrawAction> actions;
     private ColorManager colorManager;
+    private ResultImageEncoder encoder;
 
     public ImageDrawEngine(ImageDrawConfig config) {
         this.config = config;
@@ -44,13 +45,30 @@ public class ImageDrawEngine {
         this.colorManager = new ColorManager();
     }
 
+    public ImageDrawEngine(ImageDrawConfig config, ResultImageEncoder encoder) {
+        this(config);
+        this.encoder = encoder;
+    }
+
     @SuppressWarnings("UnusedReturnValue")
     public ImageDrawEngine loadImageFromBase64(String imageBase64) throws IOException {
         String[] extractedData = ImageSupport.extractImageBase64(imageBase64);
-        imageBase64Header = extractedData[0];
         String base64Data = extractedData[1];
 
         byte[] imageBytes = Base64.getDecoder().decode(base64Data);
+        loadImage(imageBytes);
+        imageBase64Header = extractedData[0];
+        return this;
+    }
+
+    @SuppressWarnings("UnusedReturnValue")
+    public ImageDrawEngine loadImage(byte[] imageBytes, String imageSuffix) throws IOException {
+        loadImage(imageBytes);
+        imageBase64Header = getImageBase64Header(imageSuffix);
+        return this;
+    }
+
+    private void loadImage(byte[] imageBytes) throws IOException {
         ByteArrayInputStream bis = new ByteArrayInputStream(imageBytes);
         BufferedImage originImage = ImageIO.read(bis);
         image = new BufferedImage(
@@ -64,8 +82,6 @@ public class ImageDrawEngine {
 
         g2d.setColor(config.getLineColor());
         g2d.setStroke(new BasicStroke(config.getLineWidth()));
-
-        return this;
     }
 
     @SuppressWarnings("UnusedReturnValue")
@@ -83,9 +99,15 @@ public class ImageDrawEngine {
         }
         g2d.dispose();
 
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
         String imageSuffix = ImageSupport.getImageSuffixFromImageBase64Header(imageBase64Header);
+        if (encoder != null) {
+            ImageSupport.ImageData encodedImageData = encoder.encode(image, imageSuffix);
+            outputData = encodedImageData.getData();
+            imageBase64Header = getImageBase64Header(encodedImageData.getImageSuffix());
+            return this;
+        }
 
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
         if (IMAGE_JPEG_SET.contains(imageSuffix.toLowerCase())) {
             Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(IMAGE_SUFFIX_JPEG);
             if (writers.hasNext()) {
@@ -104,18 +126,22 @@ public class ImageDrawEngine {
             ImageIO.write(image, imageSuffix, bos);
         }
 
-        outputBase64Data = Base64.getEncoder().encodeToString(bos.toByteArray());
+        outputData = bos.toByteArray();
         return this;
     }
 
-    @SuppressWarnings("unused")
     public String outputBase64Data() {
-        return outputBase64Data;
+        return Base64.getEncoder().encodeToString(outputData);
     }
 
     public String outputImageBase64() {
-        return imageBase64Header == null ? composeImageBase64(DEFAULT_IMAGE_BASE64_HEADER, outputBase64Data):
-                composeImageBase64(imageBase64Header, outputBase64Data);
+        return imageBase64Header == null ? composeImageBase64(DEFAULT_IMAGE_BASE64_HEADER, outputBase64Data()):
+                composeImageBase64(imageBase64Header, outputBase64Data());
+    }
+
+    public ImageSupport.ImageData outputImageData() {
+        String imageSuffix = ImageSupport.getImageSuffixFromImageBase64Header(imageBase64Header);
+        return ImageSupport.toImageData(outputData, "image/" + imageSuffix);
     }
 
     @SuppressWarnings("unused")
@@ -0,0 +1,247 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support.image;
+
+import com.milesight.beaveriot.integrations.camthinkaiinference.api.model.response.CamThinkModelInferResponse;
+import com.milesight.beaveriot.integrations.camthinkaiinference.model.RegionOfInterest;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.ImageSupport;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prepares the images sent for inference: crops them to the regions of interest of the binding, blacking out what
+ * lies outside the regions, and downscales images larger than the input size of the model, since the server resizes
+ * them to that size anyway. The coordinates in the outputs are then mapped back to the original image, so that
+ * drawing and the stored outputs are unaffected.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 21:40
+ **/
+@Component
+public class InferImagePreprocessor {
+    private static final String FIELD_DETECTIONS = "detections";
+    private static final String FIELD_BOX = "box";
+    private static final String FIELD_MASKS = "masks";
+    private static final String FIELD_POINTS = "points";
+    private static final int POLYGON_MIN_POINTS = 3;
+    private final boolean resizeEnabled;
+    private final float jpegQuality;
+    private final DistributionSummary savedBytesSummary;
+
+    public InferImagePreprocessor(@Value("${camthink-ai-inference.infer-resize.enabled:false}") boolean resizeEnabled,
+                                  @Value("${camthink-ai-inference.infer-resize.jpeg-quality:0.9}") float jpegQuality,
+                                  ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.resizeEnabled = resizeEnabled;
+        this.jpegQuality = Math.max(0f, Math.min(1f, jpegQuality));
+        this.savedBytesSummary = DistributionSummary.builder("camthink-ai-inference.infer-resize.saved")
+                .description("Bytes saved on the inference requests by cropping and downscaling the image")
+                .baseUnit("bytes")
+                .register(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    /**
+     * @param regionsOfInterest regions of the binding, empty to infer the whole image
+     * @param inputSize         largest image dimension the model works at, null if unknown
+     * @return the image to send, or null if it is sent as is
+     */
+    public PreparedImage prepare(ImageSupport.ImageData imageData, List<RegionOfInterest> regionsOfInterest, Integer inputSize) throws IOException {
+        boolean resize = resizeEnabled && inputSize != null && inputSize > 0;
+        if (!resize && CollectionUtils.isEmpty(regionsOfInterest)) {
+            return null;
+        }
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageData.getData()));
+        if (image == null) {
+            return null;
+        }
+
+        int offsetX = 0;
+        int offsetY = 0;
+        boolean cropped = false;
+        Area area = toArea(regionsOfInterest);
+        if (area != null) {
+            Rectangle bounds = area.getBounds().intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+            if (!bounds.isEmpty() && !(area.isRectangular() && bounds.width == image.getWidth() && bounds.height == image.getHeight())) {
+                image = crop(image, area, bounds);
+                offsetX = bounds.x;
+                offsetY = bounds.y;
+                cropped = true;
+            }
+        }
+
+        double scaleX = 1;
+        double scaleY = 1;
+        boolean scaled = false;
+        if (resize && Math.max(image.getWidth(), image.getHeight()) > inputSize) {
+            BufferedImage scaledImage = downscale(image, inputSize);
+            scaleX = (double) image.getWidth() / scaledImage.getWidth();
+            scaleY = (double) image.getHeight() / scaledImage.getHeight();
+            image = scaledImage;
+            scaled = true;
+        }
+
+        if (!cropped && !scaled) {
+            return null;
+        }
+
+        byte[] data = ImageSupport.encodeJpeg(image, jpegQuality);
+        if (!cropped && data.length >= imageData.getData().length) {
+            return null;
+        }
+        savedBytesSummary.record(Math.max(0, imageData.getData().length - data.length));
+        return new PreparedImage(ImageSupport.toImageBase64(ImageSupport.toImageData(data, "image/jpeg")), scaleX, scaleY, offsetX, offsetY);
+    }
+
+    private static Area toArea(List<RegionOfInterest> regionsOfInterest) {
+        if (CollectionUtils.isEmpty(regionsOfInterest)) {
+            return null;
+        }
+
+        Area area = new Area();
+        for (RegionOfInterest regionOfInterest : regionsOfInterest) {
+            Polygon polygon = toPolygon(regionOfInterest);
+            if (polygon != null) {
+                area.add(new Area(polygon));
+            }
+        }
+        return area.isEmpty() ? null : area;
+    }
+
+    private static Polygon toPolygon(RegionOfInterest regionOfInterest) {
+        Polygon polygon = new Polygon();
+        List<Integer> box = regionOfInterest.getBox();
+        if (box != null && box.size() >= CamThinkModelInferResponse.BOX_SIZE) {
+            int x = box.get(CamThinkModelInferResponse.BOX_X_INDEX);
+            int y = box.get(CamThinkModelInferResponse.BOX_Y_INDEX);
+            int width = box.get(CamThinkModelInferResponse.BOX_WIDTH_INDEX);
+            int height = box.get(CamThinkModelInferResponse.BOX_HEIGHT_INDEX);
+            polygon.addPoint(x, y);
+            polygon.addPoint(x + width, y);
+            polygon.addPoint(x + width, y + height);
+            polygon.addPoint(x, y + height);
+        } else if (regionOfInterest.getPoints() != null) {
+            for (List<Integer> point : regionOfInterest.getPoints()) {
+                if (point != null && point.size() >= CamThinkModelInferResponse.MASK_SIZE) {
+                    polygon.addPoint(point.get(CamThinkModelInferResponse.MASK_POINT_X_INDEX), point.get(CamThinkModelInferResponse.MASK_POINT_Y_INDEX));
+                }
+            }
+        }
+        return polygon.npoints >= POLYGON_MIN_POINTS ? polygon : null;
+    }
+
+    private static BufferedImage crop(BufferedImage image, Area area, Rectangle bounds) {
+        BufferedImage croppedImage = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = croppedImage.createGraphics();
+        try {
+            g2d.translate(-bounds.x, -bounds.y);
+            g2d.setClip(area);
+            g2d.drawImage(image, 0, 0, null);
+        } finally {
+            g2d.dispose();
+        }
+        return croppedImage;
+    }
+
+    private static BufferedImage downscale(BufferedImage image, int inputSize) {
+        double scale = (double) inputSize / Math.max(image.getWidth(), image.getHeight());
+        int scaledWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int scaledHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage scaledImage = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = scaledImage.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+        } finally {
+            g2d.dispose();
+        }
+        return scaledImage;
+    }
+
+    /**
+     * Map the boxes, masks and points of the detections in the outputs back to the original image, in place.
+     */
+    public void restoreCoordinates(CamThinkModelInferResponse camThinkModelInferResponse, PreparedImage preparedImage) {
+        if (camThinkModelInferResponse.getData() == null || camThinkModelInferResponse.getData().getOutputs() == null) {
+            return;
+        }
+
+        Object data = camThinkModelInferResponse.getData().getOutputs().get(CamThinkModelInferResponse.ModelInferData.FIELD_DATA);
+        if (!(data instanceof List<?> outputDataList)) {
+            return;
+        }
+
+        for (Object outputData : outputDataList) {
+            if (!(outputData instanceof Map<?, ?> outputDataMap) || !(outputDataMap.get(FIELD_DETECTIONS) instanceof List<?> detections)) {
+                continue;
+            }
+            for (Object detection : detections) {
+                if (detection instanceof Map<?, ?> detectionMap) {
+                    restoreDetection(detectionMap, preparedImage);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void restoreDetection(Map<?, ?> detection, PreparedImage preparedImage) {
+        double scaleX = preparedImage.scaleX();
+        double scaleY = preparedImage.scaleY();
+        int offsetX = preparedImage.offsetX();
+        int offsetY = preparedImage.offsetY();
+        if (detection.get(FIELD_BOX) instanceof List<?> box && box.size() >= CamThinkModelInferResponse.BOX_SIZE) {
+            List<Object> values = (List<Object>) box;
+            values.set(CamThinkModelInferResponse.BOX_X_INDEX, mapInteger(values.get(CamThinkModelInferResponse.BOX_X_INDEX), scaleX, offsetX));
+            values.set(CamThinkModelInferResponse.BOX_Y_INDEX, mapInteger(values.get(CamThinkModelInferResponse.BOX_Y_INDEX), scaleY, offsetY));
+            values.set(CamThinkModelInferResponse.BOX_WIDTH_INDEX, mapInteger(values.get(CamThinkModelInferResponse.BOX_WIDTH_INDEX), scaleX, 0));
+            values.set(CamThinkModelInferResponse.BOX_HEIGHT_INDEX, mapInteger(values.get(CamThinkModelInferResponse.BOX_HEIGHT_INDEX), scaleY, 0));
+        }
+        if (detection.get(FIELD_MASKS) instanceof List<?> masks) {
+            for (Object mask : masks) {
+                if (mask instanceof List<?> point && point.size() >= CamThinkModelInferResponse.MASK_SIZE) {
+                    List<Object> values = (List<Object>) point;
+                    values.set(CamThinkModelInferResponse.MASK_POINT_X_INDEX, mapInteger(values.get(CamThinkModelInferResponse.MASK_POINT_X_INDEX), scaleX, offsetX));
+                    values.set(CamThinkModelInferResponse.MASK_POINT_Y_INDEX, mapInteger(values.get(CamThinkModelInferResponse.MASK_POINT_Y_INDEX), scaleY, offsetY));
+                }
+            }
+        }
+        if (detection.get(FIELD_POINTS) instanceof List<?> points) {
+            for (Object pointItem : points) {
+                if (pointItem instanceof List<?> point && point.size() > CamThinkModelInferResponse.POINT_Y_INDEX) {
+                    List<Object> values = (List<Object>) point;
+                    values.set(CamThinkModelInferResponse.POINT_X_INDEX, mapDouble(values.get(CamThinkModelInferResponse.POINT_X_INDEX), scaleX, offsetX));
+                    values.set(CamThinkModelInferResponse.POINT_Y_INDEX, mapDouble(values.get(CamThinkModelInferResponse.POINT_Y_INDEX), scaleY, offsetY));
+                }
+            }
+        }
+    }
+
+    private static Object mapInteger(Object value, double scale, int offset) {
+        return value instanceof Number number ? (Object) ((int) Math.round(number.doubleValue() * scale) + offset) : value;
+    }
+
+    private static Object mapDouble(Object value, double scale, int offset) {
+        return value instanceof Number number ? (Object) (number.doubleValue() * scale + offset) : value;
+    }
+
+    /**
+     * @param scaleX  ratio of the width of the image before downscaling to the width sent
+     * @param scaleY  ratio of the height of the image before downscaling to the height sent
+     * @param offsetX left of the cropped region in the original image
+     * @param offsetY top of the cropped region in the original image
+     */
+    public record PreparedImage(String imageBase64, double scaleX, double scaleY, int offsetX, int offsetY) {
+    }
+}
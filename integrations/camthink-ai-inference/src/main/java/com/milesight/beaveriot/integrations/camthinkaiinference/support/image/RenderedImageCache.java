@@ -0,0 +1,77 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support.image;
+
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.ImageSupport;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of rendered result images, bounded by their total size in bytes. Images are keyed by a
+ * digest of what they are rendered from.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 19:40
+ **/
+public class RenderedImageCache {
+    private final long maxBytes;
+    private final Map<String, ImageSupport.ImageData> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public RenderedImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static String key(String... sources) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String source : sources) {
+                digest.update(String.valueOf(source).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized ImageSupport.ImageData get(String key) {
+        return images.get(key);
+    }
+
+    public synchronized void put(String key, ImageSupport.ImageData imageData) {
+        long size = imageData.getData().length;
+        if (size > maxBytes) {
+            return;
+        }
+
+        ImageSupport.ImageData previous = images.put(key, imageData);
+        totalBytes += size - (previous == null ? 0 : previous.getData().length);
+        Iterator<ImageSupport.ImageData> iterator = images.values().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            totalBytes -= iterator.next().getData().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Cached image of the key, rendered outside the lock on a miss. Two concurrent misses may both render it.
+     */
+    public ImageSupport.ImageData computeIfAbsent(String key, RenderFunction renderer) throws Exception {
+        ImageSupport.ImageData imageData = get(key);
+        if (imageData == null) {
+            imageData = renderer.render();
+            put(key, imageData);
+        }
+        return imageData;
+    }
+
+    @FunctionalInterface
+    public interface RenderFunction {
+        ImageSupport.ImageData render() throws Exception;
+    }
+}
@@ -0,0 +1,155 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support.image;
+
+import com.milesight.beaveriot.integrations.camthinkaiinference.enums.ResultImageFormat;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.ImageSupport;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes annotated result images: optionally downscaled to a maximum dimension, then written as JPEG with the
+ * configured quality, as PNG, or in the format of the source image. Image writers are pooled per format since
+ * creating one is costly and an instance cannot be shared between threads.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 19:10
+ **/
+@Slf4j
+@Component
+public class ResultImageEncoder {
+    private static final String METER_PREFIX = "camthink-ai-inference.result-image";
+    private static final String IMAGE_SUFFIX_JPEG = "jpeg";
+    private static final String IMAGE_SUFFIX_PNG = "png";
+    private static final Set<String> IMAGE_JPEG_SET = Set.of(IMAGE_SUFFIX_JPEG, "jpg");
+    private final ResultImageFormat format;
+    private final float jpegQuality;
+    private final int maxDimension;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Queue<ImageWriter>> writerPools = new ConcurrentHashMap<>();
+
+    public ResultImageEncoder(@Value("${camthink-ai-inference.result-image.format:SOURCE}") ResultImageFormat format,
+                              @Value("${camthink-ai-inference.result-image.jpeg-quality:0.85}") float jpegQuality,
+                              @Value("${camthink-ai-inference.result-image.max-dimension:0}") int maxDimension,
+                              ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.format = format;
+        this.jpegQuality = Math.max(0f, Math.min(1f, jpegQuality));
+        this.maxDimension = maxDimension;
+        this.meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+    }
+
+    /**
+     * @param sourceSuffix suffix of the source image, used by the {@link ResultImageFormat#SOURCE} format
+     */
+    public ImageSupport.ImageData encode(BufferedImage image, String sourceSuffix) throws IOException {
+        long start = System.nanoTime();
+        String suffix = getOutputSuffix(sourceSuffix);
+        BufferedImage outputImage = downscale(image);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ImageWriter writer = borrowWriter(suffix);
+        if (writer == null) {
+            // No writer for the source format, e.g. webp
+            suffix = IMAGE_SUFFIX_JPEG;
+            writer = borrowWriter(suffix);
+        }
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(bos)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (IMAGE_SUFFIX_JPEG.equals(suffix)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+            writer.write(null, new IIOImage(outputImage, null, null), param);
+        } finally {
+            returnWriter(suffix, writer);
+        }
+
+        byte[] data = bos.toByteArray();
+        long encodeNanos = System.nanoTime() - start;
+        log.debug("Encoded {}x{} result image as {}: {} bytes in {} ms", outputImage.getWidth(), outputImage.getHeight(), suffix, data.length, TimeUnit.NANOSECONDS.toMillis(encodeNanos));
+        Timer.builder(METER_PREFIX + ".encode")
+                .description("Time to downscale and encode a result image")
+                .tag("format", suffix)
+                .register(meterRegistry)
+                .record(encodeNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder(METER_PREFIX + ".bytes")
+                .description("Size of the encoded result images")
+                .baseUnit("bytes")
+                .tag("format", suffix)
+                .register(meterRegistry)
+                .record(data.length);
+        return ImageSupport.toImageData(data, "image/" + suffix);
+    }
+
+    private String getOutputSuffix(String sourceSuffix) {
+        return switch (format) {
+            case JPEG -> IMAGE_SUFFIX_JPEG;
+            case PNG -> IMAGE_SUFFIX_PNG;
+            case SOURCE -> sourceSuffix == null || IMAGE_JPEG_SET.contains(sourceSuffix.toLowerCase()) ?
+                    IMAGE_SUFFIX_JPEG : sourceSuffix.toLowerCase();
+        };
+    }
+
+    private BufferedImage downscale(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (maxDimension <= 0 || Math.max(width, height) <= maxDimension) {
+            return image;
+        }
+
+        double scale = (double) maxDimension / Math.max(width, height);
+        int scaledWidth = Math.max(1, (int) Math.round(width * scale));
+        int scaledHeight = Math.max(1, (int) Math.round(height * scale));
+        BufferedImage scaledImage = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = scaledImage.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+        } finally {
+            g2d.dispose();
+        }
+        return scaledImage;
+    }
+
+    private ImageWriter borrowWriter(String suffix) {
+        ImageWriter writer = writerPools.computeIfAbsent(suffix, key -> new ConcurrentLinkedQueue<>()).poll();
+        if (writer != null) {
+            return writer;
+        }
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(suffix);
+        return writers.hasNext() ? writers.next() : null;
+    }
+
+    private void returnWriter(String suffix, ImageWriter writer) {
+        try {
+            writer.reset();
+            writerPools.get(suffix).offer(writer);
+        } catch (Exception e) {
+            log.warn("Discard image writer of format {}: {}", suffix, e.getMessage());
+            writer.dispose();
+        }
+    }
+}
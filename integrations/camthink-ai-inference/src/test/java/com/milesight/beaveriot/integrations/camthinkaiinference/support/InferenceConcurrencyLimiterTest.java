@@ -0,0 +1,171 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+import com.milesight.beaveriot.base.exception.ServiceException;
+import com.milesight.beaveriot.integrations.camthinkaiinference.api.enums.ServerErrorCode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/19 14:20
+ **/
+public class InferenceConcurrencyLimiterTest {
+    private static final String TENANT_ID = "tenant";
+    private static final String MODEL_ID = "model-1";
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // Responses of the requests in the order they were sent
+    private final List<CompletableFuture<String>> sent = new ArrayList<>();
+
+    @Test
+    public void queuesRequestsOverLimitUntilOneCompletes() throws Exception {
+        InferenceConcurrencyLimiter limiter = newLimiter(2, 64, 10, Duration.ofSeconds(30));
+
+        CompletableFuture<String> first = execute(limiter);
+        execute(limiter);
+        CompletableFuture<String> third = execute(limiter);
+
+        assertEquals(2, sent.size());
+        assertEquals(2, gauge("in-flight"), 0);
+        assertEquals(1, gauge("queued"), 0);
+
+        sent.get(0).complete("result-1");
+
+        assertEquals("result-1", first.get(1, TimeUnit.SECONDS));
+        assertEquals(3, sent.size());
+        assertEquals(0, gauge("queued"), 0);
+        sent.get(2).complete("result-3");
+        assertEquals("result-3", third.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void increasesLimitAfterLimitWorthOfSuccesses() {
+        InferenceConcurrencyLimiter limiter = newLimiter(1, 2, 10, Duration.ofSeconds(30));
+
+        execute(limiter);
+        execute(limiter);
+        assertEquals(1, sent.size());
+
+        sent.get(0).complete("result");
+        assertEquals(2, sent.size());
+
+        // The limit grew to two, so the next request is sent next to the running one
+        execute(limiter);
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    public void halvesLimitWhenServerIsOverloaded() {
+        InferenceConcurrencyLimiter limiter = newLimiter(4, 64, 10, Duration.ofSeconds(30));
+        for (int i = 0; i < 4; i++) {
+            execute(limiter);
+        }
+
+        sent.get(0).completeExceptionally(overload());
+        execute(limiter);
+        assertEquals(4, sent.size());
+
+        // Limit is two and a half with two running
+        sent.get(1).complete("result");
+        assertEquals(4, sent.size());
+
+        sent.get(2).complete("result");
+        assertEquals(5, sent.size());
+    }
+
+    @Test
+    public void overloadFailsOnlyItsOwnRequest() {
+        InferenceConcurrencyLimiter limiter = newLimiter(1, 64, 10, Duration.ofSeconds(30));
+
+        CompletableFuture<String> first = execute(limiter);
+        CompletableFuture<String> second = execute(limiter);
+        sent.get(0).completeExceptionally(overload());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> first.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof ServiceException);
+        assertEquals(2, sent.size());
+        assertFalse(second.isDone());
+    }
+
+    @Test
+    public void rejectsRequestWhenQueueIsFull() {
+        InferenceConcurrencyLimiter limiter = newLimiter(1, 64, 1, Duration.ofSeconds(30));
+
+        execute(limiter);
+        CompletableFuture<String> queued = execute(limiter);
+        CompletableFuture<String> rejected = execute(limiter);
+
+        assertFalse(queued.isDone());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertEquals(1, meterRegistry.get("camthink-ai-inference.infer-limit.rejected").tag("reason", "queue_full").counter().count(), 0);
+    }
+
+    @Test
+    public void rejectsRequestWaitingLongerThanTimeout() throws Exception {
+        InferenceConcurrencyLimiter limiter = newLimiter(1, 64, 10, Duration.ofMillis(50));
+
+        execute(limiter);
+        CompletableFuture<String> timedOut = execute(limiter);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> timedOut.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertEquals(0, gauge("queued"), 0);
+        assertEquals(1, meterRegistry.get("camthink-ai-inference.infer-limit.rejected").tag("reason", "queue_timeout").counter().count(), 0);
+
+        // The timed out request is not sent when the running one completes
+        sent.get(0).complete("result");
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void skipsQueuedRequestCancelledByCaller() throws Exception {
+        InferenceConcurrencyLimiter limiter = newLimiter(1, 64, 10, Duration.ofSeconds(30));
+
+        execute(limiter);
+        CompletableFuture<String> cancelled = execute(limiter);
+        CompletableFuture<String> third = execute(limiter);
+        cancelled.cancel(false);
+
+        sent.get(0).complete("result");
+
+        // The third request is sent in place of the cancelled one
+        assertEquals(2, sent.size());
+        assertEquals(0, gauge("queued"), 0);
+        sent.get(1).complete("result-3");
+        assertEquals("result-3", third.get(1, TimeUnit.SECONDS));
+    }
+
+    private InferenceConcurrencyLimiter newLimiter(int initialLimit, int maxLimit, int queueSize, Duration queueTimeout) {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        return new InferenceConcurrencyLimiter(initialLimit, 1, maxLimit, queueSize, queueTimeout, beanFactory.getBeanProvider(MeterRegistry.class));
+    }
+
+    private CompletableFuture<String> execute(InferenceConcurrencyLimiter limiter) {
+        return limiter.execute(TENANT_ID, MODEL_ID, () -> {
+            CompletableFuture<String> response = new CompletableFuture<>();
+            sent.add(response);
+            return response;
+        });
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get("camthink-ai-inference.infer-limit." + name).tag("model", MODEL_ID).gauge().value();
+    }
+
+    private static ServiceException overload() {
+        return ServiceException.with(ServerErrorCode.SERVER_MODEL_WORKER_BUSY.getErrorCode(), ServerErrorCode.SERVER_MODEL_WORKER_BUSY.getErrorMessage()).build();
+    }
+}
@@ -0,0 +1,64 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/19 11:25
+ **/
+public class VersionedCacheTest {
+    private final VersionedCache<String, String> cache = new VersionedCache<>();
+
+    @Test
+    public void loadsOncePerKey() {
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("value-1", cache.get("key-1", () -> "value-" + loads.incrementAndGet()));
+        assertEquals("value-1", cache.get("key-1", () -> "value-" + loads.incrementAndGet()));
+        assertEquals("value-2", cache.get("key-2", () -> "value-" + loads.incrementAndGet()));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void updateChangesCachedValueOnly() {
+        cache.update("key", value -> value + "-updated");
+        assertEquals("loaded", cache.get("key", () -> "loaded"));
+
+        cache.update("key", value -> value + "-updated");
+
+        assertEquals("loaded-updated", cache.get("key", () -> "reloaded"));
+    }
+
+    @Test
+    public void putReplacesCachedValue() {
+        cache.get("key", () -> "loaded");
+
+        cache.put("key", "put");
+
+        assertEquals("put", cache.get("key", () -> "reloaded"));
+    }
+
+    @Test
+    public void invalidateForcesReload() {
+        cache.get("key", () -> "loaded");
+
+        cache.invalidate("key");
+
+        assertEquals("reloaded", cache.get("key", () -> "reloaded"));
+    }
+
+    @Test
+    public void valueLoadedDuringChangeIsNotCached() {
+        String value = cache.get("key", () -> {
+            cache.put("key", "put");
+            return "stale";
+        });
+
+        assertEquals("stale", value);
+        assertEquals("put", cache.get("key", () -> "reloaded"));
+    }
+}
@@ -0,0 +1,120 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support.image;
+
+import com.milesight.beaveriot.integrations.camthinkaiinference.api.model.response.CamThinkModelInferResponse;
+import com.milesight.beaveriot.integrations.camthinkaiinference.model.RegionOfInterest;
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.ImageSupport;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/19 11:30
+ **/
+public class InferImagePreprocessorTest {
+    private final InferImagePreprocessor resizingPreprocessor = preprocessor(true);
+    private final InferImagePreprocessor croppingPreprocessor = preprocessor(false);
+
+    @Test
+    public void sendsImageAsIsWithoutResizeOrRegions() throws IOException {
+        ImageSupport.ImageData imageData = jpeg(800, 600);
+
+        assertNull(croppingPreprocessor.prepare(imageData, List.of(), 400));
+        assertNull(resizingPreprocessor.prepare(imageData, null, null));
+        assertNull(resizingPreprocessor.prepare(imageData, null, 1024));
+    }
+
+    @Test
+    public void downscalesToInputSize() throws IOException {
+        InferImagePreprocessor.PreparedImage preparedImage = resizingPreprocessor.prepare(jpeg(800, 600), null, 400);
+
+        assertNotNull(preparedImage);
+        BufferedImage image = decode(preparedImage);
+        assertEquals(400, image.getWidth());
+        assertEquals(300, image.getHeight());
+        assertEquals(2.0, preparedImage.scaleX(), 0.001);
+        assertEquals(2.0, preparedImage.scaleY(), 0.001);
+        assertEquals(0, preparedImage.offsetX());
+        assertEquals(0, preparedImage.offsetY());
+    }
+
+    @Test
+    public void cropsToRegionsOfInterest() throws IOException {
+        RegionOfInterest box = new RegionOfInterest();
+        box.setBox(List.of(100, 50, 200, 100));
+        RegionOfInterest polygon = new RegionOfInterest();
+        polygon.setPoints(List.of(List.of(250, 100), List.of(400, 100), List.of(400, 300)));
+
+        InferImagePreprocessor.PreparedImage preparedImage = croppingPreprocessor.prepare(jpeg(800, 600), List.of(box, polygon), 400);
+
+        assertNotNull(preparedImage);
+        BufferedImage image = decode(preparedImage);
+        assertEquals(300, image.getWidth());
+        assertEquals(250, image.getHeight());
+        assertEquals(100, preparedImage.offsetX());
+        assertEquals(50, preparedImage.offsetY());
+        assertEquals(1.0, preparedImage.scaleX(), 0.001);
+    }
+
+    @Test
+    public void ignoresRegionsCoveringWholeImage() throws IOException {
+        RegionOfInterest box = new RegionOfInterest();
+        box.setBox(List.of(0, 0, 800, 600));
+
+        assertNull(croppingPreprocessor.prepare(jpeg(800, 600), List.of(box), null));
+    }
+
+    @Test
+    public void restoresCoordinatesToOriginalImage() {
+        Map<String, Object> detection = new HashMap<>();
+        detection.put("box", new ArrayList<>(List.of(10, 20, 30, 40)));
+        detection.put("masks", new ArrayList<>(List.of(new ArrayList<>(List.of(5, 6)))));
+        detection.put("points", new ArrayList<>(List.of(new ArrayList<>(List.of(1.5, 2.5, 0, 0.9)))));
+        CamThinkModelInferResponse response = response(detection);
+
+        croppingPreprocessor.restoreCoordinates(response, new InferImagePreprocessor.PreparedImage("", 2.0, 3.0, 100, 50));
+
+        assertEquals(List.of(120, 110, 60, 120), detection.get("box"));
+        assertEquals(List.of(List.of(110, 68)), detection.get("masks"));
+        assertEquals(List.of(List.of(103.0, 57.5, 0, 0.9)), detection.get("points"));
+    }
+
+    private static CamThinkModelInferResponse response(Map<String, Object> detection) {
+        Map<String, Object> outputData = new HashMap<>();
+        outputData.put("detections", List.of(detection));
+        Map<String, Object> outputs = new HashMap<>();
+        outputs.put(CamThinkModelInferResponse.ModelInferData.FIELD_DATA, List.of(outputData));
+        CamThinkModelInferResponse.ModelInferData modelInferData = new CamThinkModelInferResponse.ModelInferData();
+        modelInferData.setOutputs(outputs);
+        CamThinkModelInferResponse response = new CamThinkModelInferResponse();
+        response.setData(modelInferData);
+        return response;
+    }
+
+    private static InferImagePreprocessor preprocessor(boolean resizeEnabled) {
+        return new InferImagePreprocessor(resizeEnabled, 0.9f, new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    private static ImageSupport.ImageData jpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        return ImageSupport.toImageData(ImageSupport.encodeJpeg(image, 0.9f), "image/jpeg");
+    }
+
+    private static BufferedImage decode(InferImagePreprocessor.PreparedImage preparedImage) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(ImageSupport.parseFromImageBase64(preparedImage.imageBase64()).getData()));
+    }
+}
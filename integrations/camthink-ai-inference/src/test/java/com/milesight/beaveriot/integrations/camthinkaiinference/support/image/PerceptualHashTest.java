@@ -0,0 +1,59 @@
+package com.milesight.beaveriot.integrations.camthinkaiinference.support.image;
+
+import com.milesight.beaveriot.integrations.camthinkaiinference.support.ImageSupport;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/19 11:20
+ **/
+public class PerceptualHashTest {
+    @Test
+    public void hashesBrighteningRowsToZeroBits() {
+        assertEquals(0L, PerceptualHash.of(gradient(256, 128, false)));
+    }
+
+    @Test
+    public void hashesDarkeningRowsToOneBits() {
+        assertEquals(-1L, PerceptualHash.of(gradient(256, 128, true)));
+        assertEquals(64, PerceptualHash.distance(PerceptualHash.of(gradient(256, 128, false)), PerceptualHash.of(gradient(256, 128, true))));
+    }
+
+    @Test
+    public void hashesAlikeImagesCloseTogether() throws IOException {
+        BufferedImage image = gradient(1920, 1080, false);
+        Long hash = PerceptualHash.of(ImageSupport.encodeJpeg(image, 0.9f));
+        Long recompressedHash = PerceptualHash.of(ImageSupport.encodeJpeg(image, 0.3f));
+
+        assertNotNull(hash);
+        assertNotNull(recompressedHash);
+        assertTrue(PerceptualHash.distance(hash, recompressedHash) <= 2);
+        assertTrue(PerceptualHash.distance(hash, PerceptualHash.of(image)) <= 2);
+    }
+
+    @Test
+    public void returnsNullForUnreadableData() throws IOException {
+        assertNull(PerceptualHash.of("not an image".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static BufferedImage gradient(int width, int height, boolean darkening) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            int gray = x * 255 / (width - 1);
+            if (darkening) {
+                gray = 255 - gray;
+            }
+            int rgb = (gray << 16) | (gray << 8) | gray;
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+}
@@ -10,6 +10,7 @@ import com.milesight.beaveriot.integrations.milesightgateway.legacy.VersionUpgra
 import com.milesight.beaveriot.integrations.milesightgateway.model.GatewayData;
 import com.milesight.beaveriot.integrations.milesightgateway.mqtt.MsGwMqttClient;
 import com.milesight.beaveriot.integrations.milesightgateway.mqtt.MsGwStatus;
+import com.milesight.beaveriot.integrations.milesightgateway.mqtt.MsGwUplinkRateLimiter;
 import com.milesight.beaveriot.integrations.milesightgateway.requester.GatewayRequesterFactory;
 import com.milesight.beaveriot.integrations.milesightgateway.service.DeviceModelService;
 import com.milesight.beaveriot.integrations.milesightgateway.service.DeviceService;
@@ -63,6 +64,9 @@ public class MilesightGatewayBootstrap implements IntegrationBootstrap {
     @Autowired
     private MsGwStatus msGwStatus;
 
+    @Autowired
+    private MsGwUplinkRateLimiter msGwUplinkRateLimiter;
+
     @Override
     public void onPrepared(Integration integration) {
         // do nothing
@@ -70,6 +74,8 @@ public class MilesightGatewayBootstrap implements IntegrationBootstrap {
 
     @Override
     public void onStarted(Integration integrationConfig) {
+        // Started and shut down with the integration, the MQTT subscriptions are only made once
+        msGwUplinkRateLimiter.init();
         msGwMqttClient.init();
     }
 
@@ -96,6 +102,6 @@ public class MilesightGatewayBootstrap implements IntegrationBootstrap {
 
     @Override
     public void onDestroy(Integration integration) {
-        // do nothing
+        msGwUplinkRateLimiter.shutdown();
     }
 }
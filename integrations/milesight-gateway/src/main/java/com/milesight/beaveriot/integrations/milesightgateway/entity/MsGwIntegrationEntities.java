@@ -36,6 +36,8 @@ public class MsGwIntegrationEntities extends ExchangePayload {
 
     public static final String GATEWAY_DEVICE_RELATION_IDENTIFIER = "gateway-device-relation";
 
+    public static final String RATE_LIMITED_DEVICES_IDENTIFIER = "rate-limited-devices";
+
     public static final String GATEWAY_DEVICE_RELATION_KEY = Constants.INTEGRATION_ID + ".integration." + GATEWAY_DEVICE_RELATION_IDENTIFIER;
 
     @Entity(type = EntityType.SERVICE, name = "Add Device", identifier = ADD_DEVICE_IDENTIFIER, visible = false)
@@ -50,6 +52,9 @@ public class MsGwIntegrationEntities extends ExchangePayload {
     @Entity(type = EntityType.PROPERTY, name = "Gateway Device Relation", identifier = GATEWAY_DEVICE_RELATION_IDENTIFIER, accessMod = AccessMod.R, visible = false)
     private String gatewayDeviceRelation;
 
+    @Entity(type = EntityType.PROPERTY, name = "Rate Limited Devices", identifier = RATE_LIMITED_DEVICES_IDENTIFIER, accessMod = AccessMod.R)
+    private String rateLimitedDevices;
+
     @Data
     @EqualsAndHashCode(callSuper = true)
     @Entities
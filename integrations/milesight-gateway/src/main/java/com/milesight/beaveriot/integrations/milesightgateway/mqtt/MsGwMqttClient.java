@@ -60,6 +60,9 @@ public class MsGwMqttClient {
     @Autowired
     MsGwStatus msGwStatus;
 
+    @Autowired
+    MsGwUplinkRateLimiter msGwUplinkRateLimiter;
+
     private final Map<String, CompletableFuture<MqttRawResponse>> pendingRequests = new ConcurrentHashMap<>();
 
     private final ObjectMapper json = GatewayString.jsonInstance();
@@ -88,6 +91,11 @@ public class MsGwMqttClient {
         try {
             MqttUplinkData uplinkData = json.readValue(message, MqttUplinkData.class);
             String deviceEui = GatewayString.standardizeEUI(uplinkData.getDevEUI());
+            if (!msGwUplinkRateLimiter.tryAcquire(gatewayEui, deviceEui)) {
+                log.debug("{} uplink of {} dropped by rate limit", gatewayEui, deviceEui);
+                msGwStatus.updateGatewayStatus(gatewayEui, DeviceStatus.ONLINE, System.currentTimeMillis());
+                return;
+            }
 
             byte[] binData = Base64.getDecoder().decode(uplinkData.getData());
             String deviceKey = GatewayString.getDeviceKey(deviceEui);
@@ -0,0 +1,165 @@
+package com.milesight.beaveriot.integrations.milesightgateway.mqtt;
+
+import com.milesight.beaveriot.base.utils.JsonUtils;
+import com.milesight.beaveriot.context.integration.wrapper.AnnotatedEntityWrapper;
+import com.milesight.beaveriot.context.security.TenantContext;
+import com.milesight.beaveriot.integrations.milesightgateway.entity.MsGwIntegrationEntities;
+import com.milesight.beaveriot.integrations.milesightgateway.util.GatewayString;
+import com.milesight.beaveriot.integrations.milesightgateway.util.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket limits on device uplinks, per device and per gateway, checked before the payload is decoded.
+ * Limits are messages per second, 0 means unlimited.
+ *
+ * @author simon
+ * @date 2026/10/18
+ */
+@Component
+@Slf4j
+public class MsGwUplinkRateLimiter {
+    private static final String METER_NAME = "milesight-gateway.uplink.rate-limited";
+
+    private static final long IDLE_BUCKET_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final AtomicBoolean isInit = new AtomicBoolean(false);
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<String, LongAdder>> tenantOffenders = new ConcurrentHashMap<>();
+
+    @Value("${milesight-gateway.uplink-rate-limit.device-rate:0}")
+    double deviceRate;
+
+    @Value("${milesight-gateway.uplink-rate-limit.device-burst:10}")
+    int deviceBurst;
+
+    @Value("${milesight-gateway.uplink-rate-limit.gateway-rate:0}")
+    double gatewayRate;
+
+    @Value("${milesight-gateway.uplink-rate-limit.gateway-burst:100}")
+    int gatewayBurst;
+
+    @Value("${milesight-gateway.uplink-rate-limit.report-interval-seconds:60}")
+    long reportIntervalSeconds;
+
+    @Value("${milesight-gateway.uplink-rate-limit.max-reported-devices:20}")
+    int maxReportedDevices;
+
+    @Autowired
+    ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    private Counter deviceLimitedCounter;
+
+    private Counter gatewayLimitedCounter;
+
+    private MeterRegistry meterRegistry;
+
+    private ScheduledExecutorService reportScheduler;
+
+    public void init() {
+        if (!isInit.compareAndSet(false, true)) {
+            return;
+        }
+
+        meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        deviceLimitedCounter = Counter.builder(METER_NAME).tag("scope", "device").register(meterRegistry);
+        gatewayLimitedCounter = Counter.builder(METER_NAME).tag("scope", "gateway").register(meterRegistry);
+        reportScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "msgw-uplink-rate-limit-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reportScheduler.scheduleWithFixedDelay(this::report, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        if (!isInit.compareAndSet(true, false)) {
+            return;
+        }
+
+        reportScheduler.shutdownNow();
+        meterRegistry.remove(deviceLimitedCounter);
+        meterRegistry.remove(gatewayLimitedCounter);
+        buckets.clear();
+        tenantOffenders.clear();
+    }
+
+    /**
+     * @return false if the uplink exceeds the limit of its device or gateway and must be dropped
+     */
+    public boolean tryAcquire(String gatewayEui, String deviceEui) {
+        if (!isInit.get()) {
+            return true;
+        }
+
+        String tenantId = TenantContext.getTenantId();
+        Counter limitedCounter = null;
+        if (!tryAcquire("device:" + tenantId + ":" + deviceEui, deviceRate, deviceBurst)) {
+            limitedCounter = deviceLimitedCounter;
+        } else if (!tryAcquire("gateway:" + tenantId + ":" + gatewayEui, gatewayRate, gatewayBurst)) {
+            limitedCounter = gatewayLimitedCounter;
+        }
+
+        if (limitedCounter == null) {
+            return true;
+        }
+
+        limitedCounter.increment();
+        tenantOffenders.computeIfAbsent(tenantId, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(GatewayString.getDeviceKey(deviceEui), k -> new LongAdder())
+                .increment();
+        return false;
+    }
+
+    private boolean tryAcquire(String bucketKey, double rate, int burst) {
+        if (rate <= 0) {
+            return true;
+        }
+
+        return buckets.computeIfAbsent(bucketKey, k -> new TokenBucket(rate, burst)).tryAcquire();
+    }
+
+    private void report() {
+        try {
+            long idleSince = System.nanoTime() - IDLE_BUCKET_TIMEOUT_NANOS;
+            buckets.values().removeIf(bucket -> bucket.isIdleSince(idleSince));
+
+            tenantOffenders.keySet().forEach(tenantId -> {
+                Map<String, LongAdder> offenders = tenantOffenders.remove(tenantId);
+                if (offenders == null) {
+                    return;
+                }
+
+                Map<String, Long> topOffenders = new LinkedHashMap<>();
+                offenders.entrySet().stream()
+                        .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                        .limit(maxReportedDevices)
+                        .forEach(entry -> topOffenders.put(entry.getKey(), entry.getValue().sum()));
+                log.warn("Rate limited gateway devices of tenant {}: {}", tenantId, topOffenders);
+                TenantContext.setTenantId(tenantId);
+                new AnnotatedEntityWrapper<MsGwIntegrationEntities>()
+                        .saveValue(MsGwIntegrationEntities::getRateLimitedDevices, JsonUtils.toJSON(topOffenders))
+                        .publishSync();
+            });
+        } catch (Exception e) {
+            log.error("Report rate limited devices error", e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.milesight.beaveriot.integrations.milesightgateway.util;
+
+/**
+ * Token bucket refilled continuously at {@code ratePerSecond} up to {@code burst} tokens.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 15:10
+ **/
+public class TokenBucket {
+    private final double ratePerSecond;
+    private final int burst;
+    private double tokens;
+    private long lastRefillNanos;
+    private volatile long lastAcquireNanos;
+
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.lastRefillNanos = System.nanoTime();
+        this.lastAcquireNanos = lastRefillNanos;
+    }
+
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * ratePerSecond / 1_000_000_000d);
+        lastRefillNanos = now;
+        lastAcquireNanos = now;
+        if (tokens < 1) {
+            return false;
+        }
+
+        tokens -= 1;
+        return true;
+    }
+
+    public boolean hasSameLimit(double ratePerSecond, int burst) {
+        return this.ratePerSecond == ratePerSecond && this.burst == Math.max(1, burst);
+    }
+
+    public boolean isIdleSince(long nanos) {
+        return lastAcquireNanos < nanos;
+    }
+}
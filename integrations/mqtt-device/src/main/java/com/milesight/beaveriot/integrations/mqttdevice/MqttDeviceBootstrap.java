@@ -5,7 +5,9 @@ import com.milesight.beaveriot.context.integration.bootstrap.IntegrationBootstra
 import com.milesight.beaveriot.context.integration.model.DeviceStatusConfig;
 import com.milesight.beaveriot.context.integration.model.Integration;
 import com.milesight.beaveriot.integrations.mqttdevice.service.MqttDeviceMqttService;
+import com.milesight.beaveriot.integrations.mqttdevice.service.MqttDeviceRegistrationService;
 import com.milesight.beaveriot.integrations.mqttdevice.service.MqttDeviceService;
+import com.milesight.beaveriot.integrations.mqttdevice.service.MqttDeviceTemplateService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
@@ -18,11 +20,15 @@ import org.springframework.stereotype.Component;
 public class MqttDeviceBootstrap implements IntegrationBootstrap {
     private final MqttDeviceMqttService mqttDeviceMqttService;
     private final MqttDeviceService mqttDeviceService;
+    private final MqttDeviceRegistrationService mqttDeviceRegistrationService;
+    private final MqttDeviceTemplateService mqttDeviceTemplateService;
     private final DeviceStatusServiceProvider deviceStatusServiceProvider;
 
-    public MqttDeviceBootstrap(MqttDeviceMqttService mqttDeviceMqttService, MqttDeviceService mqttDeviceService, DeviceStatusServiceProvider deviceStatusServiceProvider) {
+    public MqttDeviceBootstrap(MqttDeviceMqttService mqttDeviceMqttService, MqttDeviceService mqttDeviceService, MqttDeviceRegistrationService mqttDeviceRegistrationService, MqttDeviceTemplateService mqttDeviceTemplateService, DeviceStatusServiceProvider deviceStatusServiceProvider) {
         this.mqttDeviceMqttService = mqttDeviceMqttService;
         this.mqttDeviceService = mqttDeviceService;
+        this.mqttDeviceRegistrationService = mqttDeviceRegistrationService;
+        this.mqttDeviceTemplateService = mqttDeviceTemplateService;
         this.deviceStatusServiceProvider = deviceStatusServiceProvider;
     }
 
@@ -34,6 +40,8 @@ public class MqttDeviceBootstrap implements IntegrationBootstrap {
     @Override
     public void onStarted(Integration integrationConfig) {
         log.info("Mqtt device integration starting");
+        mqttDeviceRegistrationService.init();
+        mqttDeviceTemplateService.init();
         subscribeTopic();
         log.info("Mqtt device integration started");
     }
@@ -42,6 +50,7 @@ public class MqttDeviceBootstrap implements IntegrationBootstrap {
     public void onDestroy(Integration integrationConfig) {
         log.info("Mqtt device integration destroying");
         unsubscribeTopic();
+        mqttDeviceRegistrationService.shutdown();
         log.info("Mqtt device integration destroyed");
     }
 
@@ -56,6 +65,7 @@ public class MqttDeviceBootstrap implements IntegrationBootstrap {
     @Override
     public void onEnabled(String tenantId, Integration integrationConfig) {
         mqttDeviceService.syncTemplates();
+        mqttDeviceMqttService.refreshTemplateSubscriptions();
         DeviceStatusConfig config = DeviceStatusConfig.builder()
                 .offlineTimeoutFetcher(mqttDeviceService::getDeviceOfflineTimeout)
                 .batchOfflineTimeoutFetcher(mqttDeviceService::getDeviceOfflineTimeouts)
@@ -0,0 +1,67 @@
+package com.milesight.beaveriot.integrations.mqttdevice.config;
+
+import com.milesight.beaveriot.integrations.mqttdevice.enums.IngestOverflowPolicy;
+import com.milesight.beaveriot.integrations.mqttdevice.enums.RateLimitExcessAction;
+import com.milesight.beaveriot.integrations.mqttdevice.enums.TopicSubscriptionMode;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * author: Luxb
+ * create: 2026/10/18 9:15
+ **/
+@Data
+@Component
+@ConfigurationProperties(prefix = "mqtt-device.ingest")
+public class MqttDeviceIngestProperties {
+    private TopicSubscriptionMode subscriptionMode = TopicSubscriptionMode.WILDCARD;
+    private Executor executor = new Executor();
+    private Batch batch = new Batch();
+    private Registration registration = new Registration();
+    private RateLimit rateLimit = new RateLimit();
+
+    @Data
+    public static class Executor {
+        // Messages of the same device always go to the same lane, so they are processed in order. Also used by the
+        // route lanes that decode the payloads of fixed template topics to find their device.
+        private int lanes = Runtime.getRuntime().availableProcessors() * 2;
+        private int queueSize = 1000;
+        private IngestOverflowPolicy overflowPolicy = IngestOverflowPolicy.BLOCK;
+        private Duration blockTimeout = Duration.ofSeconds(1);
+        private Duration shutdownTimeout = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Batch {
+        // Trade a little latency for far fewer entity value writes under high message rates
+        private boolean enabled = false;
+        private int maxSize = 500;
+        private Duration maxDelay = Duration.ofMillis(100);
+    }
+
+    @Data
+    public static class Registration {
+        // Unknown devices are created in batches, the messages of a device being created are buffered meanwhile
+        private int batchSize = 200;
+        private Duration flushInterval = Duration.ofMillis(50);
+        private int maxBufferedMessages = 100;
+        private int maxAttempts = 3;
+        private int replayLanes = Runtime.getRuntime().availableProcessors();
+        private int replayQueueSize = 1000;
+    }
+
+    @Data
+    public static class RateLimit {
+        // Used for the devices of templates without their own device limit, 0 means unlimited
+        private double defaultDeviceRate = 0;
+        private int defaultDeviceBurst = 10;
+        private RateLimitExcessAction excessAction = RateLimitExcessAction.DROP;
+        private int sampleRatio = 100;
+        private Duration offenderReportInterval = Duration.ofMinutes(1);
+        private int maxReportedOffenders = 20;
+        private Duration idleBucketTimeout = Duration.ofMinutes(10);
+    }
+}
@@ -8,4 +8,5 @@ public class LockConstants {
     private LockConstants() {}
 
     public static final String SYNC_DEVICE_TEMPLATE_LOCK = "sync-device-template-lock";
+    public static final String REGISTER_DEVICE_LOCK_PREFIX = "register-device-lock";
 }
\ No newline at end of file
@@ -9,4 +9,5 @@ public class MqttDeviceConstants {
     public static final long DEFAULT_DEVICE_OFFLINE_TIMEOUT = 1500;
     public static final long MIN_DEVICE_OFFLINE_TIMEOUT = 1;
     public static final long MAX_DEVICE_OFFLINE_TIMEOUT = 2880;
+    public static final String DEFAULT_BATCH_TIMESTAMP_KEY = "ts";
 }
@@ -24,6 +24,7 @@ import lombok.EqualsAndHashCode;
 public class MqttDeviceIntegrationEntities extends ExchangePayload {
     public static final String TOPIC_MAP_IDENTIFIER = "topic-map";
     public static final String DEVICE_TEMPLATE_ADDITIONAL_DATA_MAP_IDENTIFIER = "device-template-additional-data-map";
+    public static final String RATE_LIMITED_DEVICES_IDENTIFIER = "rate-limited-devices";
     public static final String ADD_DEVICE_IDENTIFIER = "add-device";
     public static final String DELETE_DEVICE_IDENTIFIER = "delete-device";
     public static final String ADD_DEVICE_DEVICE_ID_IDENTIFIER = "device_id";
@@ -36,6 +37,10 @@ public class MqttDeviceIntegrationEntities extends ExchangePayload {
     @Entity(type = EntityType.PROPERTY, identifier = DEVICE_TEMPLATE_ADDITIONAL_DATA_MAP_IDENTIFIER, accessMod = AccessMod.R, visible = false)
     private String deviceTemplateAdditionalDataMap;
 
+    // Devices, by identifier, whose messages exceeded the rate limits during the last report interval, with the number of limited messages
+    @Entity(type = EntityType.PROPERTY, name = "Rate Limited Devices", identifier = RATE_LIMITED_DEVICES_IDENTIFIER, accessMod = AccessMod.R)
+    private String rateLimitedDevices;
+
     @Entity(type = EntityType.SERVICE, identifier = ADD_DEVICE_IDENTIFIER, visible = false)
     private AddDevice addDevice;
 
@@ -0,0 +1,20 @@
+package com.milesight.beaveriot.integrations.mqttdevice.enums;
+
+/**
+ * author: Luxb
+ * create: 2026/10/18 9:12
+ **/
+public enum IngestOverflowPolicy {
+    /**
+     * Wait up to the configured block timeout for room in the lane, then drop the message
+     */
+    BLOCK,
+    /**
+     * Drop the incoming message when the lane is full
+     */
+    DISCARD,
+    /**
+     * Drop the oldest queued message of the lane to make room for the incoming one
+     */
+    DISCARD_OLDEST
+}
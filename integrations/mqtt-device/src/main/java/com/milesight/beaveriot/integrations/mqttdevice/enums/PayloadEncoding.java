@@ -0,0 +1,20 @@
+package com.milesight.beaveriot.integrations.mqttdevice.enums;
+
+/**
+ * author: Luxb
+ * create: 2026/10/18 13:10
+ **/
+public enum PayloadEncoding {
+    /**
+     * UTF-8 JSON text
+     */
+    JSON,
+    /**
+     * Concise Binary Object Representation, RFC 8949
+     */
+    CBOR,
+    /**
+     * MessagePack
+     */
+    MESSAGE_PACK
+}
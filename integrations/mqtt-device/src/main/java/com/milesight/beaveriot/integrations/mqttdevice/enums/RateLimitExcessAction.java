@@ -0,0 +1,16 @@
+package com.milesight.beaveriot.integrations.mqttdevice.enums;
+
+/**
+ * author: Luxb
+ * create: 2026/10/18 15:05
+ **/
+public enum RateLimitExcessAction {
+    /**
+     * Drop every message over the limit
+     */
+    DROP,
+    /**
+     * Keep one of every {@code sampleRatio} messages over the limit and drop the others
+     */
+    SAMPLE
+}
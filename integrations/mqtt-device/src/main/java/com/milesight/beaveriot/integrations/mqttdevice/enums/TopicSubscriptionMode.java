@@ -0,0 +1,16 @@
+package com.milesight.beaveriot.integrations.mqttdevice.enums;
+
+/**
+ * author: Luxb
+ * create: 2026/10/18 13:40
+ **/
+public enum TopicSubscriptionMode {
+    /**
+     * Subscribe to the whole integration namespace and resolve the device template in the application
+     */
+    WILDCARD,
+    /**
+     * Subscribe to exactly the topics configured on the device templates, so the broker drops unrelated traffic
+     */
+    TEMPLATE
+}
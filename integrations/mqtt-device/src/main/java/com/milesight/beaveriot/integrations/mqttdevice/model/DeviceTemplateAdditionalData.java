@@ -1,5 +1,7 @@
 package com.milesight.beaveriot.integrations.mqttdevice.model;
 
+import com.milesight.beaveriot.integrations.mqttdevice.constants.MqttDeviceConstants;
+import com.milesight.beaveriot.integrations.mqttdevice.enums.PayloadEncoding;
 import lombok.Data;
 
 /**
@@ -9,4 +11,18 @@ import lombok.Data;
 @Data
 public class DeviceTemplateAdditionalData {
     private long deviceOfflineTimeout;
+    private PayloadEncoding payloadEncoding = PayloadEncoding.JSON;
+    // A batch payload is a JSON array of records, each one a regular template input with its own timestamp
+    private boolean batchPayload;
+    private String batchTimestampKey = MqttDeviceConstants.DEFAULT_BATCH_TIMESTAMP_KEY;
+    // Messages per second allowed for each device and for the whole template, 0 means the default. Each record of a
+    // batch payload counts as a message, unless the device is known from the topic
+    private double deviceRateLimit;
+    private int deviceRateBurst;
+    private double templateRateLimit;
+    private int templateRateBurst;
+    // Skip writing payloads identical to the previous one of the device, recording them as history every keep-alive interval
+    private boolean changeFilter;
+    // Unit: seconds
+    private long changeFilterKeepAliveInterval;
 }
@@ -0,0 +1,19 @@
+package com.milesight.beaveriot.integrations.mqttdevice.model.message;
+
+import com.milesight.beaveriot.pubsub.api.message.RemoteBroadcastMessage;
+import lombok.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/18 11:02
+ **/
+@Data
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KnownDeviceEvictMessage extends RemoteBroadcastMessage {
+    private String tenantId;
+    private String deviceKey;
+}
@@ -1,6 +1,7 @@
 package com.milesight.beaveriot.integrations.mqttdevice.model.request;
 
 import com.milesight.beaveriot.integrations.mqttdevice.constants.MqttDeviceConstants;
+import com.milesight.beaveriot.integrations.mqttdevice.enums.PayloadEncoding;
 import lombok.Data;
 
 @Data
@@ -10,4 +11,14 @@ public class CreateDeviceTemplateRequest {
     private String description;
     private String topic;
     private long deviceOfflineTimeout = MqttDeviceConstants.DEFAULT_DEVICE_OFFLINE_TIMEOUT;
+    private PayloadEncoding payloadEncoding = PayloadEncoding.JSON;
+    private boolean batchPayload;
+    private String batchTimestampKey = MqttDeviceConstants.DEFAULT_BATCH_TIMESTAMP_KEY;
+    private double deviceRateLimit;
+    private int deviceRateBurst;
+    private double templateRateLimit;
+    private int templateRateBurst;
+    private boolean changeFilter;
+    // Unit: seconds
+    private long changeFilterKeepAliveInterval;
 }
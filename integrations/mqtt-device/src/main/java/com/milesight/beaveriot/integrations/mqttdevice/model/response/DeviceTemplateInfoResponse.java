@@ -2,6 +2,8 @@ package com.milesight.beaveriot.integrations.mqttdevice.model.response;
 
 import com.milesight.beaveriot.context.model.response.DeviceTemplateResponseData;
 import com.milesight.beaveriot.context.support.SpringContext;
+import com.milesight.beaveriot.integrations.mqttdevice.enums.PayloadEncoding;
+import com.milesight.beaveriot.integrations.mqttdevice.model.DeviceTemplateAdditionalData;
 import com.milesight.beaveriot.integrations.mqttdevice.service.MqttDeviceTemplateService;
 import com.milesight.beaveriot.integrations.mqttdevice.support.DataCenter;
 import lombok.Data;
@@ -17,6 +19,15 @@ import org.springframework.beans.BeanUtils;
 public class DeviceTemplateInfoResponse extends DeviceTemplateResponseData {
     private String topic;
     private long deviceOfflineTimeout;
+    private PayloadEncoding payloadEncoding;
+    private boolean batchPayload;
+    private String batchTimestampKey;
+    private double deviceRateLimit;
+    private int deviceRateBurst;
+    private double templateRateLimit;
+    private int templateRateBurst;
+    private boolean changeFilter;
+    private long changeFilterKeepAliveInterval;
 
     protected DeviceTemplateInfoResponse(DeviceTemplateResponseData deviceTemplateResponseData) {
         BeanUtils.copyProperties(deviceTemplateResponseData, this);
@@ -25,6 +36,16 @@ public class DeviceTemplateInfoResponse extends DeviceTemplateResponseData {
         topic = DataCenter.getTopic(deviceTemplateId);
         MqttDeviceTemplateService mqttDeviceTemplateService = SpringContext.getBean(MqttDeviceTemplateService.class);
         deviceOfflineTimeout = mqttDeviceTemplateService.getDeviceOfflineTimeout(deviceTemplateId).toMinutes();
+        DeviceTemplateAdditionalData deviceTemplateAdditionalData = mqttDeviceTemplateService.getDeviceTemplateAdditionalData(deviceTemplateId);
+        payloadEncoding = deviceTemplateAdditionalData.getPayloadEncoding();
+        batchPayload = deviceTemplateAdditionalData.isBatchPayload();
+        batchTimestampKey = deviceTemplateAdditionalData.getBatchTimestampKey();
+        deviceRateLimit = deviceTemplateAdditionalData.getDeviceRateLimit();
+        deviceRateBurst = deviceTemplateAdditionalData.getDeviceRateBurst();
+        templateRateLimit = deviceTemplateAdditionalData.getTemplateRateLimit();
+        templateRateBurst = deviceTemplateAdditionalData.getTemplateRateBurst();
+        changeFilter = deviceTemplateAdditionalData.isChangeFilter();
+        changeFilterKeepAliveInterval = deviceTemplateAdditionalData.getChangeFilterKeepAliveInterval();
     }
 
     public static DeviceTemplateInfoResponse build(DeviceTemplateResponseData deviceTemplateResponseData) {
@@ -1,19 +1,36 @@
 package com.milesight.beaveriot.integrations.mqttdevice.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.milesight.beaveriot.base.enums.ErrorCode;
 import com.milesight.beaveriot.base.exception.ServiceException;
+import com.milesight.beaveriot.base.utils.JsonUtils;
 import com.milesight.beaveriot.context.api.*;
 import com.milesight.beaveriot.context.integration.model.Device;
 import com.milesight.beaveriot.context.integration.model.ExchangePayload;
+import com.milesight.beaveriot.context.integration.model.event.DeviceEvent;
 import com.milesight.beaveriot.context.model.response.DeviceTemplateInputResult;
-import com.milesight.beaveriot.integrations.mqttdevice.support.DataCenter;
+import com.milesight.beaveriot.context.mqtt.model.MqttMessage;
+import com.milesight.beaveriot.context.security.TenantContext;
+import com.milesight.beaveriot.eventbus.annotations.EventSubscribe;
+import com.milesight.beaveriot.integrations.mqttdevice.config.MqttDeviceIngestProperties;
+import com.milesight.beaveriot.integrations.mqttdevice.enums.TopicSubscriptionMode;
+import com.milesight.beaveriot.integrations.mqttdevice.model.DeviceTemplateAdditionalData;
+import com.milesight.beaveriot.integrations.mqttdevice.model.message.KnownDeviceEvictMessage;
+import com.milesight.beaveriot.integrations.mqttdevice.model.message.TemplateTopicChangedMessage;
+import com.milesight.beaveriot.integrations.mqttdevice.support.*;
+import com.milesight.beaveriot.pubsub.MessagePubSub;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
-import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 /**
  * author: Luxb
@@ -22,53 +39,370 @@ import java.util.concurrent.Executors;
 @Slf4j
 @Service
 public class MqttDeviceMqttService {
+    private static final String INGEST_EXECUTOR_NAME = "mqtt-device.ingest";
+    private static final String ROUTE_EXECUTOR_NAME = INGEST_EXECUTOR_NAME + ".route";
     private final MqttPubSubServiceProvider mqttPubSubServiceProvider;
     private final DeviceTemplateParserProvider deviceTemplateParserProvider;
-    private final DeviceServiceProvider deviceServiceProvider;
+    private final MqttDeviceRegistrationService mqttDeviceRegistrationService;
+    private final MqttDeviceRateLimitService mqttDeviceRateLimitService;
     private final EntityValueServiceProvider entityValueServiceProvider;
     private final DeviceStatusServiceProvider deviceStatusServiceProvider;
-    private final ExecutorService jsonDataHandleService;
+    private final MqttDeviceIngestProperties ingestProperties;
+    private final MessagePubSub messagePubSub;
+    private final MeterRegistry meterRegistry;
+    private final TopicSubscriptionRegistry topicSubscriptionRegistry = new TopicSubscriptionRegistry();
+    private final PayloadChangeFilter payloadChangeFilter = new PayloadChangeFilter();
+    private final DeviceIdentifierResolver deviceIdentifierResolver = new DeviceIdentifierResolver();
+    private volatile OrderedLaneExecutor routeExecutor;
+    private volatile OrderedLaneExecutor ingestExecutor;
+    private volatile EntityValueWriteBatcher entityValueWriteBatcher;
 
-    public MqttDeviceMqttService(MqttPubSubServiceProvider mqttPubSubServiceProvider, DeviceTemplateParserProvider deviceTemplateParserProvider, DeviceServiceProvider deviceServiceProvider, EntityValueServiceProvider entityValueServiceProvider, DeviceStatusServiceProvider deviceStatusServiceProvider) {
+    public MqttDeviceMqttService(MqttPubSubServiceProvider mqttPubSubServiceProvider, DeviceTemplateParserProvider deviceTemplateParserProvider, MqttDeviceRegistrationService mqttDeviceRegistrationService, MqttDeviceRateLimitService mqttDeviceRateLimitService, EntityValueServiceProvider entityValueServiceProvider, DeviceStatusServiceProvider deviceStatusServiceProvider, MqttDeviceIngestProperties ingestProperties, MessagePubSub messagePubSub, ObjectProvider<MeterRegistry> meterRegistryProvider) {
         this.mqttPubSubServiceProvider = mqttPubSubServiceProvider;
         this.deviceTemplateParserProvider = deviceTemplateParserProvider;
-        this.deviceServiceProvider = deviceServiceProvider;
+        this.mqttDeviceRegistrationService = mqttDeviceRegistrationService;
+        this.mqttDeviceRateLimitService = mqttDeviceRateLimitService;
         this.entityValueServiceProvider = entityValueServiceProvider;
         this.deviceStatusServiceProvider = deviceStatusServiceProvider;
-        this.jsonDataHandleService = Executors.newCachedThreadPool();
+        this.ingestProperties = ingestProperties;
+        this.messagePubSub = messagePubSub;
+        this.meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+    }
+
+    private OrderedLaneExecutor buildIngestExecutor(String name) {
+        MqttDeviceIngestProperties.Executor executorProperties = ingestProperties.getExecutor();
+        return new OrderedLaneExecutor(
+                name,
+                executorProperties.getLanes(),
+                executorProperties.getQueueSize(),
+                executorProperties.getOverflowPolicy(),
+                executorProperties.getBlockTimeout(),
+                meterRegistry
+        );
+    }
+
+    private EntityValueWriteBatcher buildEntityValueWriteBatcher() {
+        MqttDeviceIngestProperties.Batch batchProperties = ingestProperties.getBatch();
+        if (!batchProperties.isEnabled()) {
+            return null;
+        }
+
+        return new EntityValueWriteBatcher(
+                INGEST_EXECUTOR_NAME,
+                batchProperties.getMaxSize(),
+                batchProperties.getMaxDelay(),
+                entityValueServiceProvider::saveValuesAndPublishAsync,
+                meterRegistry
+        );
     }
 
     public void subscribe() {
-        mqttPubSubServiceProvider.subscribe(DataCenter.INTEGRATION_ID + "/#", message -> {
-            try {
-                String topic = message.getTopicSubPath().substring(DataCenter.INTEGRATION_ID.length());
-                Long deviceTemplateId = DataCenter.getTemplateIdByTopic(topic);
-                if (deviceTemplateId == null) {
-                    throw ServiceException.with(ErrorCode.SERVER_ERROR.getErrorCode(), MessageFormat.format("No device template related to the sub topic ''{0}''", topic)).build();
+        entityValueWriteBatcher = buildEntityValueWriteBatcher();
+        ingestExecutor = buildIngestExecutor(INGEST_EXECUTOR_NAME);
+        routeExecutor = buildIngestExecutor(ROUTE_EXECUTOR_NAME);
+        mqttDeviceRateLimitService.start();
+        messagePubSub.subscribe(TemplateTopicChangedMessage.class, this::onTemplateTopicChanged);
+        messagePubSub.subscribe(KnownDeviceEvictMessage.class, this::onKnownDeviceEvict);
+        // In template mode topic filters are tenant data, they are subscribed when the integration is enabled for a tenant
+        if (!isTemplateSubscriptionMode()) {
+            mqttPubSubServiceProvider.subscribe(DataCenter.INTEGRATION_ID + "/#", this::onMessage);
+        }
+    }
+
+    private boolean isTemplateSubscriptionMode() {
+        return TopicSubscriptionMode.TEMPLATE.equals(ingestProperties.getSubscriptionMode());
+    }
+
+    /**
+     * Subscribe to the topics of the current tenant's device templates and unsubscribe the ones no longer used.
+     * Does nothing unless the subscription mode is {@link TopicSubscriptionMode#TEMPLATE}.
+     */
+    public void refreshTemplateSubscriptions() {
+        if (!isTemplateSubscriptionMode()) {
+            return;
+        }
+
+        String tenantId = TenantContext.getTenantId();
+        Set<String> topicFilters = DataCenter.getTopicIndex().getTopicMap().keySet().stream()
+                .map(TopicSupporter::toTopicFilter)
+                .collect(Collectors.toSet());
+        TopicSubscriptionRegistry.Change change = topicSubscriptionRegistry.update(tenantId, topicFilters);
+        change.getToSubscribe().forEach(topicFilter -> mqttPubSubServiceProvider.subscribe(topicFilter, this::onMessage));
+        change.getToUnsubscribe().forEach(mqttPubSubServiceProvider::unsubscribe);
+    }
+
+    /**
+     * Refresh the subscriptions on this node and notify the other nodes to drop their topic index and do the same.
+     */
+    public void onTemplateTopicsChanged() {
+        deviceIdentifierResolver.forget(TenantContext.getTenantId());
+        refreshTemplateSubscriptions();
+        messagePubSub.publish(TemplateTopicChangedMessage.builder().tenantId(TenantContext.getTenantId()).build());
+    }
+
+    private void onTemplateTopicChanged(TemplateTopicChangedMessage message) {
+        try {
+            DataCenter.invalidateTopicIndexCache(message.getTenantId());
+            deviceIdentifierResolver.forget(message.getTenantId());
+            TenantContext.setTenantId(message.getTenantId());
+            refreshTemplateSubscriptions();
+        } catch (Exception e) {
+            log.error("Refresh template subscriptions error, tenantId: {}, error: ", message.getTenantId(), e);
+        }
+    }
+
+    private void onMessage(MqttMessage message) {
+        try {
+            String topicSubPath = message.getTopicSubPath();
+            String topic = topicSubPath.substring(DataCenter.INTEGRATION_ID.length());
+            TopicIndex.TopicMatch topicMatch = DataCenter.getTopicIndex().match(topic);
+            if (topicMatch == null) {
+                throw ServiceException.with(ErrorCode.SERVER_ERROR.getErrorCode(), MessageFormat.format("No device template related to the sub topic ''{0}''", topic)).build();
+            }
+            Long deviceTemplateId = topicMatch.deviceTemplateId();
+            DeviceTemplateAdditionalData deviceTemplateAdditionalData = getDeviceTemplateAdditionalData(deviceTemplateId);
+            byte[] payload = message.getPayload();
+            String tenantId = TenantContext.getTenantId();
+            String deviceIdentifier = topicMatch.deviceIdentifier();
+            if (deviceIdentifier != null) {
+                // Device known from the topic: limited and dispatched without decoding
+                if (mqttDeviceRateLimitService.tryAcquire(deviceIdentifier, deviceTemplateId, deviceTemplateAdditionalData)) {
+                    dispatch(getDeviceLaneKey(tenantId, deviceTemplateId, deviceIdentifier), tenantId, deviceTemplateId, payload, null, deviceTemplateAdditionalData, true);
                 }
-                String jsonData = new String(message.getPayload(), StandardCharsets.UTF_8);
-                jsonDataHandleService.execute(() -> {
-                    DeviceTemplateInputResult result = deviceTemplateParserProvider.input(DataCenter.INTEGRATION_ID, deviceTemplateId, jsonData);
-                    Device device = result.getDevice();
-                    ExchangePayload payload = result.getPayload();
-                    if (device != null) {
-                        if (deviceServiceProvider.findByKey(device.getKey()) == null) {
-                            deviceServiceProvider.save(device);
-                        }
-                        if (payload != null) {
-                            entityValueServiceProvider.saveValuesAndPublishAsync(payload);
-                            deviceStatusServiceProvider.online(device);
-                        }
-                    }
-                });
-            } catch (Exception e) {
-                log.error("MqttDeviceMqttService.subscribe error: {}", e.getMessage());
+                return;
+            }
+            if (deviceTemplateAdditionalData.isBatchPayload()) {
+                // Records of several devices, each one limited by its device once parsed
+                dispatch(topicSubPath, tenantId, deviceTemplateId, payload, null, deviceTemplateAdditionalData, false);
+                return;
             }
+
+            // Fixed template topic: the device is only known from the payload, which is decoded on a route lane
+            // instead of this callback thread. Routes run in order per topic, so the messages of a device reach its
+            // lane in order.
+            routeExecutor.execute(topicSubPath, () -> {
+                TenantContext.setTenantId(tenantId);
+                String jsonData = PayloadDecoder.toJson(payload, deviceTemplateAdditionalData.getPayloadEncoding());
+                String resolvedIdentifier = deviceIdentifierResolver.resolve(tenantId, deviceTemplateId, jsonData);
+                if (resolvedIdentifier == null) {
+                    // Processed on the route lane, so that the identifier field is learned from it before the next
+                    // message of the topic is routed, and no later message of the device overtakes it on its lane.
+                    // It is limited by its device once parsed.
+                    process(deviceTemplateId, payload, jsonData, deviceTemplateAdditionalData, false);
+                } else if (mqttDeviceRateLimitService.tryAcquire(resolvedIdentifier, deviceTemplateId, deviceTemplateAdditionalData)) {
+                    dispatch(getDeviceLaneKey(tenantId, deviceTemplateId, resolvedIdentifier), tenantId, deviceTemplateId, payload, jsonData, deviceTemplateAdditionalData, true);
+                }
+            });
+        } catch (Exception e) {
+            log.error("MqttDeviceMqttService.subscribe error: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Process the message on the ingest lane of the partition key, so that messages of the same key keep their order.
+     *
+     * @param jsonData    decoded payload, null to decode it on the lane
+     * @param rateLimited whether the message already passed the rate limits of its device, otherwise they are
+     *                    checked once the template parser found the device
+     */
+    private void dispatch(String partitionKey, String tenantId, Long deviceTemplateId, byte[] payload, String jsonData, DeviceTemplateAdditionalData deviceTemplateAdditionalData, boolean rateLimited) {
+        ingestExecutor.execute(partitionKey, () -> {
+            TenantContext.setTenantId(tenantId);
+            process(deviceTemplateId, payload, jsonData, deviceTemplateAdditionalData, rateLimited);
         });
     }
 
+    private void process(Long deviceTemplateId, byte[] payload, String jsonData, DeviceTemplateAdditionalData deviceTemplateAdditionalData, boolean rateLimited) {
+        String decodedJsonData = jsonData != null ? jsonData : PayloadDecoder.toJson(payload, deviceTemplateAdditionalData.getPayloadEncoding());
+        if (deviceTemplateAdditionalData.isBatchPayload()) {
+            handleBatchData(deviceTemplateId, decodedJsonData, deviceTemplateAdditionalData, rateLimited);
+        } else {
+            handleData(deviceTemplateId, decodedJsonData, deviceTemplateAdditionalData, rateLimited);
+        }
+    }
+
+    private boolean isWithinRateLimit(Device device, Long deviceTemplateId, DeviceTemplateAdditionalData deviceTemplateAdditionalData, boolean rateLimited) {
+        return rateLimited || mqttDeviceRateLimitService.tryAcquire(device.getIdentifier(), deviceTemplateId, deviceTemplateAdditionalData);
+    }
+
+    private static String getDeviceLaneKey(String tenantId, Long deviceTemplateId, String deviceIdentifier) {
+        return tenantId + ":" + deviceTemplateId + ":" + deviceIdentifier;
+    }
+
+    private DeviceTemplateAdditionalData getDeviceTemplateAdditionalData(Long deviceTemplateId) {
+        DeviceTemplateAdditionalData deviceTemplateAdditionalData = DataCenter.getDeviceTemplateAdditionalData(deviceTemplateId);
+        return deviceTemplateAdditionalData == null ? new DeviceTemplateAdditionalData() : deviceTemplateAdditionalData;
+    }
+
+    private void handleData(Long deviceTemplateId, String jsonData, DeviceTemplateAdditionalData deviceTemplateAdditionalData, boolean rateLimited) {
+        DeviceTemplateInputResult result = deviceTemplateParserProvider.input(DataCenter.INTEGRATION_ID, deviceTemplateId, jsonData);
+        Device device = result.getDevice();
+        ExchangePayload payload = result.getPayload();
+        if (device != null) {
+            deviceIdentifierResolver.learn(TenantContext.getTenantId(), deviceTemplateId, jsonData, device.getIdentifier());
+            if (!isWithinRateLimit(device, deviceTemplateId, deviceTemplateAdditionalData, rateLimited)) {
+                return;
+            }
+            mqttDeviceRegistrationService.register(device, () -> {
+                if (payload != null) {
+                    saveDeviceValues(device, payload, null, deviceTemplateAdditionalData);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param timestamp time the values were recorded at, null for the time they are written
+     */
+    private void saveDeviceValues(Device device, ExchangePayload payload, Long timestamp, DeviceTemplateAdditionalData deviceTemplateAdditionalData) {
+        if (deviceTemplateAdditionalData.isChangeFilter()) {
+            saveChangedValues(device, payload, timestamp, deviceTemplateAdditionalData.getChangeFilterKeepAliveInterval());
+        } else {
+            saveValues(payload, timestamp);
+        }
+        // Unchanged payloads still prove the device is alive
+        deviceStatusServiceProvider.online(device);
+    }
+
+    private void saveChangedValues(Device device, ExchangePayload payload, Long timestamp, long keepAliveIntervalSeconds) {
+        String changeFilterKey = getChangeFilterKey(TenantContext.getTenantId(), device.getKey());
+        switch (payloadChangeFilter.check(changeFilterKey, payload, keepAliveIntervalSeconds * 1000)) {
+            case CHANGED -> saveValues(payload, timestamp);
+            case KEEP_ALIVE -> entityValueServiceProvider.saveHistoryRecord(payload, timestamp == null ? System.currentTimeMillis() : timestamp);
+            default -> {
+                // UNCHANGED: nothing to write
+            }
+        }
+    }
+
+    @SuppressWarnings("unused")
+    @EventSubscribe(payloadKeyExpression = DataCenter.INTEGRATION_ID + ".device.*", eventType = DeviceEvent.EventType.DELETED)
+    public void onDeviceDeleted(DeviceEvent event) {
+        // A device created again with the same key must get its first payload written
+        payloadChangeFilter.forget(getChangeFilterKey(TenantContext.getTenantId(), event.getPayload().getKey()));
+    }
+
+    private void onKnownDeviceEvict(KnownDeviceEvictMessage message) {
+        payloadChangeFilter.forget(getChangeFilterKey(message.getTenantId(), message.getDeviceKey()));
+    }
+
+    private String getChangeFilterKey(String tenantId, String deviceKey) {
+        return tenantId + ":" + deviceKey;
+    }
+
+    /**
+     * Handle a JSON array of timestamped records, possibly of several devices. Only the newest record of each
+     * device is saved as latest value, the older ones go to history grouped by timestamp. The records of a device
+     * are written once it is registered, without holding up the lane.
+     */
+    private void handleBatchData(Long deviceTemplateId, String jsonData, DeviceTemplateAdditionalData deviceTemplateAdditionalData, boolean rateLimited) {
+        JsonNode root = JsonUtils.toJsonNode(jsonData);
+        if (root == null || !root.isArray()) {
+            handleData(deviceTemplateId, jsonData, deviceTemplateAdditionalData, rateLimited);
+            return;
+        }
+
+        String timestampKey = deviceTemplateAdditionalData.getBatchTimestampKey();
+        Map<String, DeviceBatch> deviceBatches = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        for (JsonNode recordNode : root) {
+            DeviceTemplateInputResult result;
+            try {
+                result = deviceTemplateParserProvider.input(DataCenter.INTEGRATION_ID, deviceTemplateId, recordNode.toString());
+            } catch (Exception e) {
+                log.warn("Skip invalid batch record of template {}: {}", deviceTemplateId, e.getMessage());
+                continue;
+            }
+            if (result.getDevice() == null || result.getPayload() == null || !isWithinRateLimit(result.getDevice(), deviceTemplateId, deviceTemplateAdditionalData, rateLimited)) {
+                continue;
+            }
+
+            long timestamp = recordNode.path(timestampKey).asLong(now);
+            deviceBatches.computeIfAbsent(result.getDevice().getKey(), key -> new DeviceBatch(result.getDevice()))
+                    .add(new BatchRecord(result.getPayload(), timestamp));
+        }
+
+        deviceBatches.values().forEach(deviceBatch -> mqttDeviceRegistrationService.register(deviceBatch.getDevice(), () -> {
+            deviceBatch.getHistoryPayloads().forEach((timestamp, historyPayload) -> entityValueServiceProvider.saveHistoryRecord(historyPayload, timestamp));
+            BatchRecord latestRecord = deviceBatch.getLatestRecord();
+            saveDeviceValues(deviceBatch.getDevice(), latestRecord.payload(), latestRecord.timestamp(), deviceTemplateAdditionalData);
+        }));
+    }
+
+    private void saveValues(ExchangePayload payload, Long timestamp) {
+        EntityValueWriteBatcher batcher = entityValueWriteBatcher;
+        if (batcher == null) {
+            if (timestamp != null) {
+                payload.setTimestamp(timestamp);
+            }
+            entityValueServiceProvider.saveValuesAndPublishAsync(payload);
+        } else {
+            batcher.add(TenantContext.getTenantId(), payload, timestamp);
+        }
+    }
+
+    private record BatchRecord(ExchangePayload payload, long timestamp) {
+    }
+
+    /**
+     * Records of one device in a batch: the newest one and the history of the older ones by timestamp.
+     */
+    private static class DeviceBatch {
+        private final Device device;
+        private final Map<Long, ExchangePayload> historyPayloads = new TreeMap<>();
+        private BatchRecord latestRecord;
+
+        DeviceBatch(Device device) {
+            this.device = device;
+        }
+
+        void add(BatchRecord batchRecord) {
+            if (latestRecord == null || batchRecord.timestamp() >= latestRecord.timestamp()) {
+                addHistory(latestRecord);
+                latestRecord = batchRecord;
+            } else {
+                addHistory(batchRecord);
+            }
+        }
+
+        private void addHistory(BatchRecord batchRecord) {
+            if (batchRecord != null) {
+                historyPayloads.computeIfAbsent(batchRecord.timestamp(), key -> new ExchangePayload()).putAll(batchRecord.payload());
+            }
+        }
+
+        Device getDevice() {
+            return device;
+        }
+
+        Map<Long, ExchangePayload> getHistoryPayloads() {
+            return historyPayloads;
+        }
+
+        BatchRecord getLatestRecord() {
+            return latestRecord;
+        }
+    }
+
     public void unsubscribe() {
-        mqttPubSubServiceProvider.unsubscribe(DataCenter.INTEGRATION_ID + "/#");
-        jsonDataHandleService.shutdown();
+        if (isTemplateSubscriptionMode()) {
+            topicSubscriptionRegistry.clear().forEach(mqttPubSubServiceProvider::unsubscribe);
+        } else {
+            mqttPubSubServiceProvider.unsubscribe(DataCenter.INTEGRATION_ID + "/#");
+        }
+        mqttDeviceRateLimitService.stop();
+        // Routes hand their messages to the ingest lanes, so they are drained first
+        OrderedLaneExecutor router = routeExecutor;
+        if (router != null) {
+            router.shutdown(ingestProperties.getExecutor().getShutdownTimeout());
+        }
+        OrderedLaneExecutor executor = ingestExecutor;
+        if (executor != null) {
+            executor.shutdown(ingestProperties.getExecutor().getShutdownTimeout());
+        }
+        EntityValueWriteBatcher batcher = entityValueWriteBatcher;
+        if (batcher != null) {
+            batcher.shutdown();
+        }
     }
 }
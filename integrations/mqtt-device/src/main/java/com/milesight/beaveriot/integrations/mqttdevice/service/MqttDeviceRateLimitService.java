@@ -0,0 +1,106 @@
+package com.milesight.beaveriot.integrations.mqttdevice.service;
+
+import com.milesight.beaveriot.base.utils.JsonUtils;
+import com.milesight.beaveriot.context.integration.wrapper.AnnotatedEntityWrapper;
+import com.milesight.beaveriot.context.security.TenantContext;
+import com.milesight.beaveriot.integrations.mqttdevice.config.MqttDeviceIngestProperties;
+import com.milesight.beaveriot.integrations.mqttdevice.entity.MqttDeviceIntegrationEntities;
+import com.milesight.beaveriot.integrations.mqttdevice.model.DeviceTemplateAdditionalData;
+import com.milesight.beaveriot.integrations.mqttdevice.support.IngestRateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the per-device and per-template ingest rate limits and periodically publishes the devices that
+ * exceeded them to the rate limited devices entity of their tenant.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 15:30
+ **/
+@Slf4j
+@Service
+public class MqttDeviceRateLimitService {
+    private static final String RATE_LIMITER_NAME = "mqtt-device.ingest";
+    private final MqttDeviceIngestProperties ingestProperties;
+    private final MeterRegistry meterRegistry;
+    private volatile IngestRateLimiter rateLimiter;
+    private volatile ScheduledExecutorService reportScheduler;
+
+    public MqttDeviceRateLimitService(MqttDeviceIngestProperties ingestProperties, ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.ingestProperties = ingestProperties;
+        this.meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+    }
+
+    public void start() {
+        MqttDeviceIngestProperties.RateLimit rateLimitProperties = ingestProperties.getRateLimit();
+        rateLimiter = new IngestRateLimiter(RATE_LIMITER_NAME, rateLimitProperties.getExcessAction(), rateLimitProperties.getSampleRatio(), meterRegistry);
+        reportScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, RATE_LIMITER_NAME + "-rate-limit-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long reportIntervalMillis = Math.max(1, rateLimitProperties.getOffenderReportInterval().toMillis());
+        reportScheduler.scheduleWithFixedDelay(this::report, reportIntervalMillis, reportIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param deviceIdentifier identifier of the sending device
+     * @return true if the message is within the limits of its device and template, or kept by sampling
+     */
+    public boolean tryAcquire(String deviceIdentifier, Long deviceTemplateId, DeviceTemplateAdditionalData deviceTemplateAdditionalData) {
+        IngestRateLimiter limiter = rateLimiter;
+        if (limiter == null) {
+            return true;
+        }
+
+        MqttDeviceIngestProperties.RateLimit rateLimitProperties = ingestProperties.getRateLimit();
+        boolean hasDeviceRateLimit = deviceTemplateAdditionalData.getDeviceRateLimit() > 0;
+        return limiter.tryAcquire(TenantContext.getTenantId(), deviceIdentifier, deviceTemplateId,
+                hasDeviceRateLimit ? deviceTemplateAdditionalData.getDeviceRateLimit() : rateLimitProperties.getDefaultDeviceRate(),
+                hasDeviceRateLimit ? deviceTemplateAdditionalData.getDeviceRateBurst() : rateLimitProperties.getDefaultDeviceBurst(),
+                deviceTemplateAdditionalData.getTemplateRateLimit(),
+                deviceTemplateAdditionalData.getTemplateRateBurst());
+    }
+
+    private void report() {
+        try {
+            IngestRateLimiter limiter = rateLimiter;
+            MqttDeviceIngestProperties.RateLimit rateLimitProperties = ingestProperties.getRateLimit();
+            limiter.evictIdleBuckets(rateLimitProperties.getIdleBucketTimeout());
+            limiter.drainOffenders().forEach((tenantId, offenders) -> {
+                Map<String, Long> topOffenders = new LinkedHashMap<>();
+                offenders.entrySet().stream()
+                        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                        .limit(rateLimitProperties.getMaxReportedOffenders())
+                        .forEach(entry -> topOffenders.put(entry.getKey(), entry.getValue()));
+                log.warn("Rate limited mqtt devices of tenant {}: {}", tenantId, topOffenders);
+                TenantContext.setTenantId(tenantId);
+                AnnotatedEntityWrapper<MqttDeviceIntegrationEntities> entitiesWrapper = new AnnotatedEntityWrapper<>();
+                entitiesWrapper.saveValue(MqttDeviceIntegrationEntities::getRateLimitedDevices, JsonUtils.toJSON(topOffenders)).publishSync();
+            });
+        } catch (Exception e) {
+            log.error("Report rate limited devices error: ", e);
+        }
+    }
+
+    public void stop() {
+        ScheduledExecutorService scheduler = reportScheduler;
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        IngestRateLimiter limiter = rateLimiter;
+        if (limiter != null) {
+            rateLimiter = null;
+            limiter.shutdown();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.milesight.beaveriot.integrations.mqttdevice.service;
+
+import com.milesight.beaveriot.base.annotations.shedlock.LockScope;
+import com.milesight.beaveriot.context.api.DeviceServiceProvider;
+import com.milesight.beaveriot.context.integration.model.Device;
+import com.milesight.beaveriot.context.integration.model.event.DeviceEvent;
+import com.milesight.beaveriot.context.security.TenantContext;
+import com.milesight.beaveriot.eventbus.annotations.EventSubscribe;
+import com.milesight.beaveriot.integrations.mqttdevice.config.MqttDeviceIngestProperties;
+import com.milesight.beaveriot.integrations.mqttdevice.constants.LockConstants;
+import com.milesight.beaveriot.integrations.mqttdevice.enums.IngestOverflowPolicy;
+import com.milesight.beaveriot.integrations.mqttdevice.model.message.KnownDeviceEvictMessage;
+import com.milesight.beaveriot.integrations.mqttdevice.support.DataCenter;
+import com.milesight.beaveriot.integrations.mqttdevice.support.OrderedLaneExecutor;
+import com.milesight.beaveriot.pubsub.MessagePubSub;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.core.LockProvider;
+import net.javacrumbs.shedlock.core.SimpleLock;
+import net.javacrumbs.shedlock.spring.aop.ScopedLockConfiguration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Node-local cache of the devices known to exist, so that the ingest path does not look every device up
+ * in the database.
+ * <p>
+ * Unknown devices are put on a registration queue which is flushed every {@code flushInterval} or every
+ * {@code batchSize} devices: one lookup per tenant finds the devices that already exist and only the missing
+ * ones are saved. Concurrent registrations of the same device are coalesced, and the messages arriving while
+ * a device is being created are buffered and replayed in arrival order once it exists.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 11:05
+ **/
+@Slf4j
+@Service
+public class MqttDeviceRegistrationService {
+    private static final String REGISTRATION_EXECUTOR_NAME = "mqtt-device.registration";
+    private final DeviceServiceProvider deviceServiceProvider;
+    private final MessagePubSub messagePubSub;
+    private final LockProvider lockProvider;
+    private final MqttDeviceIngestProperties ingestProperties;
+    private final MeterRegistry meterRegistry;
+    private final Set<String> knownDeviceKeys = ConcurrentHashMap.newKeySet();
+    // Guarded by pendingLock, together with the callbacks of each pending registration
+    private final Map<String, PendingRegistration> pendingRegistrations = new HashMap<>();
+    private final Object pendingLock = new Object();
+    private final BlockingQueue<PendingRegistration> registrationQueue = new LinkedBlockingQueue<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile ScheduledExecutorService flushScheduler;
+    private volatile OrderedLaneExecutor replayExecutor;
+    private volatile Counter droppedCounter;
+
+    public MqttDeviceRegistrationService(DeviceServiceProvider deviceServiceProvider, MessagePubSub messagePubSub, LockProvider lockProvider, MqttDeviceIngestProperties ingestProperties, ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.deviceServiceProvider = deviceServiceProvider;
+        this.messagePubSub = messagePubSub;
+        this.lockProvider = lockProvider;
+        this.ingestProperties = ingestProperties;
+        this.meterRegistry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+    }
+
+    public void init() {
+        messagePubSub.subscribe(KnownDeviceEvictMessage.class, this::onKnownDeviceEvict);
+
+        MqttDeviceIngestProperties.Registration registrationProperties = ingestProperties.getRegistration();
+        droppedCounter = Counter.builder(REGISTRATION_EXECUTOR_NAME + ".dropped")
+                .description("Messages dropped because their device could not be registered or too many were buffered")
+                .register(meterRegistry);
+        replayExecutor = new OrderedLaneExecutor(
+                REGISTRATION_EXECUTOR_NAME,
+                registrationProperties.getReplayLanes(),
+                registrationProperties.getReplayQueueSize(),
+                IngestOverflowPolicy.BLOCK,
+                ingestProperties.getExecutor().getBlockTimeout(),
+                meterRegistry
+        );
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, REGISTRATION_EXECUTOR_NAME + "-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long flushIntervalMillis = Math.max(1, registrationProperties.getFlushInterval().toMillis());
+        flushScheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run the callback once the device exists: immediately if it is already known, otherwise after the
+     * registration queue created it. Callbacks of one device always run in the order they were registered.
+     */
+    public void register(Device device, Runnable onRegistered) {
+        String tenantId = TenantContext.getTenantId();
+        String knownDeviceKey = getKnownDeviceKey(tenantId, device.getKey());
+        if (knownDeviceKeys.contains(knownDeviceKey)) {
+            onRegistered.run();
+            return;
+        }
+
+        PendingRegistration newPendingRegistration = null;
+        boolean isKnown = false;
+        boolean buffered = false;
+        synchronized (pendingLock) {
+            PendingRegistration pendingRegistration = pendingRegistrations.get(knownDeviceKey);
+            if (pendingRegistration == null && knownDeviceKeys.contains(knownDeviceKey)) {
+                // The device became known between the check above and taking the lock
+                isKnown = true;
+            } else {
+                if (pendingRegistration == null) {
+                    pendingRegistration = new PendingRegistration(knownDeviceKey, tenantId, device);
+                    pendingRegistrations.put(knownDeviceKey, pendingRegistration);
+                    newPendingRegistration = pendingRegistration;
+                }
+                buffered = pendingRegistration.buffer(onRegistered, ingestProperties.getRegistration().getMaxBufferedMessages());
+            }
+        }
+
+        if (isKnown) {
+            onRegistered.run();
+            return;
+        }
+
+        if (newPendingRegistration != null) {
+            registrationQueue.add(newPendingRegistration);
+            if (registrationQueue.size() >= ingestProperties.getRegistration().getBatchSize()) {
+                flushScheduler.execute(this::flushQuietly);
+            }
+        }
+
+        if (!buffered) {
+            droppedCounter.increment();
+            log.warn("Too many messages buffered for device {} being registered, message dropped", device.getKey());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("{} flush error: ", REGISTRATION_EXECUTOR_NAME, e);
+        }
+    }
+
+    private void flush() {
+        flushLock.lock();
+        try {
+            int batchSize = ingestProperties.getRegistration().getBatchSize();
+            List<PendingRegistration> batch = new ArrayList<>(batchSize);
+            // Only the registrations queued before this flush, failed ones are queued again for the next one
+            int remaining = registrationQueue.size();
+            while (remaining > 0 && registrationQueue.drainTo(batch, Math.min(batchSize, remaining)) > 0) {
+                remaining -= batch.size();
+                batch.stream()
+                        .collect(Collectors.groupingBy(PendingRegistration::getTenantId, LinkedHashMap::new, Collectors.toList()))
+                        .forEach(this::registerBatch);
+                batch.clear();
+            }
+        } finally {
+            TenantContext.clear();
+            flushLock.unlock();
+        }
+    }
+
+    private void registerBatch(String tenantId, List<PendingRegistration> batch) {
+        TenantContext.setTenantId(tenantId);
+        Set<PendingRegistration> failedRegistrations = new HashSet<>();
+        SimpleLock lock = lockProvider.lock(ScopedLockConfiguration.builder(LockScope.TENANT)
+                .name(LockConstants.REGISTER_DEVICE_LOCK_PREFIX)
+                .lockAtMostFor(Duration.ofSeconds(30))
+                .lockAtLeastFor(Duration.ZERO)
+                .waitForLock(Duration.ofSeconds(10))
+                .build()).orElse(null);
+        if (lock == null) {
+            log.warn("Timeout while waiting to register {} devices of tenant {}", batch.size(), tenantId);
+            failedRegistrations.addAll(batch);
+        } else {
+            try {
+                List<String> identifiers = batch.stream().map(pendingRegistration -> pendingRegistration.getDevice().getIdentifier()).toList();
+                Set<String> existingDeviceKeys = deviceServiceProvider.findByIdentifiers(identifiers, DataCenter.INTEGRATION_ID).stream()
+                        .map(Device::getKey)
+                        .collect(Collectors.toSet());
+                for (PendingRegistration pendingRegistration : batch) {
+                    Device device = pendingRegistration.getDevice();
+                    if (existingDeviceKeys.contains(device.getKey())) {
+                        continue;
+                    }
+                    try {
+                        deviceServiceProvider.save(device);
+                    } catch (Exception e) {
+                        log.error("Register device {} error: ", device.getKey(), e);
+                        failedRegistrations.add(pendingRegistration);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Register {} devices of tenant {} error: ", batch.size(), tenantId, e);
+                failedRegistrations.addAll(batch);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        for (PendingRegistration pendingRegistration : batch) {
+            if (!failedRegistrations.contains(pendingRegistration)) {
+                if (!replayExecutor.execute(pendingRegistration.getKnownDeviceKey(), () -> replay(pendingRegistration))) {
+                    discard(pendingRegistration);
+                }
+            } else if (++pendingRegistration.attempts < ingestProperties.getRegistration().getMaxAttempts()) {
+                registrationQueue.add(pendingRegistration);
+            } else {
+                discard(pendingRegistration);
+            }
+        }
+    }
+
+    private void replay(PendingRegistration pendingRegistration) {
+        TenantContext.setTenantId(pendingRegistration.getTenantId());
+        while (true) {
+            List<Runnable> callbacks;
+            synchronized (pendingLock) {
+                if (pendingRegistration.callbacks.isEmpty()) {
+                    // Only mark the device known once everything buffered ran, so later messages cannot overtake them
+                    pendingRegistrations.remove(pendingRegistration.getKnownDeviceKey());
+                    knownDeviceKeys.add(pendingRegistration.getKnownDeviceKey());
+                    return;
+                }
+                callbacks = new ArrayList<>(pendingRegistration.callbacks);
+                pendingRegistration.callbacks.clear();
+            }
+
+            for (Runnable callback : callbacks) {
+                try {
+                    callback.run();
+                } catch (Exception e) {
+                    log.error("Replay message of device {} error: ", pendingRegistration.getDevice().getKey(), e);
+                }
+            }
+        }
+    }
+
+    private void discard(PendingRegistration pendingRegistration) {
+        int discarded;
+        synchronized (pendingLock) {
+            pendingRegistrations.remove(pendingRegistration.getKnownDeviceKey());
+            discarded = pendingRegistration.callbacks.size();
+            pendingRegistration.callbacks.clear();
+        }
+        droppedCounter.increment(discarded);
+        log.error("Give up registering device {}, {} buffered messages dropped", pendingRegistration.getDevice().getKey(), discarded);
+    }
+
+    public void shutdown() {
+        ScheduledExecutorService scheduler = flushScheduler;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            flushQuietly();
+        }
+        OrderedLaneExecutor executor = replayExecutor;
+        if (executor != null) {
+            executor.shutdown(ingestProperties.getExecutor().getShutdownTimeout());
+        }
+        Counter counter = droppedCounter;
+        if (counter != null) {
+            meterRegistry.remove(counter);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    @EventSubscribe(payloadKeyExpression = DataCenter.INTEGRATION_ID + ".device.*", eventType = DeviceEvent.EventType.DELETED)
+    public void onDeviceDeleted(DeviceEvent event) {
+        Device device = event.getPayload();
+        String tenantId = TenantContext.getTenantId();
+        knownDeviceKeys.remove(getKnownDeviceKey(tenantId, device.getKey()));
+        messagePubSub.publish(KnownDeviceEvictMessage.builder().tenantId(tenantId).deviceKey(device.getKey()).build());
+    }
+
+    private void onKnownDeviceEvict(KnownDeviceEvictMessage message) {
+        knownDeviceKeys.remove(getKnownDeviceKey(message.getTenantId(), message.getDeviceKey()));
+    }
+
+    private String getKnownDeviceKey(String tenantId, String deviceKey) {
+        return tenantId + ":" + deviceKey;
+    }
+
+    private static class PendingRegistration {
+        private final String knownDeviceKey;
+        private final String tenantId;
+        private final Device device;
+        private final List<Runnable> callbacks = new ArrayList<>();
+        private int attempts;
+
+        PendingRegistration(String knownDeviceKey, String tenantId, Device device) {
+            this.knownDeviceKey = knownDeviceKey;
+            this.tenantId = tenantId;
+            this.device = device;
+        }
+
+        boolean buffer(Runnable callback, int maxBufferedMessages) {
+            return callbacks.size() < maxBufferedMessages && callbacks.add(callback);
+        }
+
+        String getKnownDeviceKey() {
+            return knownDeviceKey;
+        }
+
+        String getTenantId() {
+            return tenantId;
+        }
+
+        Device getDevice() {
+            return device;
+        }
+    }
+}
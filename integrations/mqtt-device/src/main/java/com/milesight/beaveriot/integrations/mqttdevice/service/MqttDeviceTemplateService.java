@@ -11,19 +11,23 @@ import com.milesight.beaveriot.context.model.DeviceTemplateModel;
 import com.milesight.beaveriot.context.model.request.SearchDeviceTemplateRequest;
 import com.milesight.beaveriot.context.model.response.DeviceTemplateInputResult;
 import com.milesight.beaveriot.context.model.response.DeviceTemplateResponseData;
+import com.milesight.beaveriot.context.security.TenantContext;
 import com.milesight.beaveriot.eventbus.annotations.EventSubscribe;
 import com.milesight.beaveriot.eventbus.api.Event;
 import com.milesight.beaveriot.eventbus.api.EventResponse;
 import com.milesight.beaveriot.integrations.mqttdevice.constants.MqttDeviceConstants;
 import com.milesight.beaveriot.integrations.mqttdevice.entity.MqttDeviceServiceEntities;
+import com.milesight.beaveriot.integrations.mqttdevice.enums.PayloadEncoding;
 import com.milesight.beaveriot.integrations.mqttdevice.enums.ServerErrorCode;
 import com.milesight.beaveriot.integrations.mqttdevice.model.DeviceTemplateAdditionalData;
+import com.milesight.beaveriot.integrations.mqttdevice.model.message.DeviceTemplateAdditionalDataChangedMessage;
 import com.milesight.beaveriot.integrations.mqttdevice.model.request.*;
 import com.milesight.beaveriot.integrations.mqttdevice.model.response.DeviceTemplateDefaultContentResponse;
 import com.milesight.beaveriot.integrations.mqttdevice.model.response.DeviceTemplateDetailResponse;
 import com.milesight.beaveriot.integrations.mqttdevice.model.response.DeviceTemplateInfoResponse;
 import com.milesight.beaveriot.integrations.mqttdevice.model.response.DeviceTemplateTestResponse;
 import com.milesight.beaveriot.integrations.mqttdevice.support.DataCenter;
+import com.milesight.beaveriot.pubsub.MessagePubSub;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
@@ -35,6 +39,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * author: Luxb
@@ -48,19 +53,29 @@ public class MqttDeviceTemplateService {
     private final MqttDeviceService mqttDeviceService;
     private final DeviceServiceProvider deviceServiceProvider;
     private final EntityValueServiceProvider entityValueServiceProvider;
+    private final MqttDeviceMqttService mqttDeviceMqttService;
+    private final MessagePubSub messagePubSub;
 
     public MqttDeviceTemplateService(IntegrationServiceProvider integrationServiceProvider,
                                      DeviceTemplateServiceProvider deviceTemplateServiceProvider,
                                      DeviceTemplateParserProvider deviceTemplateParserProvider,
                                      MqttDeviceService mqttDeviceService,
                                      DeviceServiceProvider deviceServiceProvider,
-                                     EntityValueServiceProvider entityValueServiceProvider) {
+                                     EntityValueServiceProvider entityValueServiceProvider,
+                                     MqttDeviceMqttService mqttDeviceMqttService,
+                                     MessagePubSub messagePubSub) {
         this.integrationServiceProvider = integrationServiceProvider;
         this.deviceTemplateServiceProvider = deviceTemplateServiceProvider;
         this.deviceTemplateParserProvider = deviceTemplateParserProvider;
         this.mqttDeviceService = mqttDeviceService;
         this.deviceServiceProvider = deviceServiceProvider;
         this.entityValueServiceProvider = entityValueServiceProvider;
+        this.mqttDeviceMqttService = mqttDeviceMqttService;
+        this.messagePubSub = messagePubSub;
+    }
+
+    public void init() {
+        messagePubSub.subscribe(DeviceTemplateAdditionalDataChangedMessage.class, this::onDeviceTemplateAdditionalDataChanged);
     }
 
     public void createDeviceTemplate(CreateDeviceTemplateRequest createDeviceTemplateRequest) {
@@ -85,8 +100,20 @@ public class MqttDeviceTemplateService {
         }
         deviceTemplateServiceProvider.save(deviceTemplate);
         DataCenter.putTopic(topic, deviceTemplate.getId());
-        saveDeviceOfflineTimeout(deviceTemplate.getId(), createDeviceTemplateRequest.getDeviceOfflineTimeout());
+        saveDeviceTemplateAdditionalData(deviceTemplate.getId(), deviceTemplateAdditionalData -> {
+            deviceTemplateAdditionalData.setDeviceOfflineTimeout(createDeviceTemplateRequest.getDeviceOfflineTimeout());
+            deviceTemplateAdditionalData.setPayloadEncoding(createDeviceTemplateRequest.getPayloadEncoding());
+            deviceTemplateAdditionalData.setBatchPayload(createDeviceTemplateRequest.isBatchPayload());
+            deviceTemplateAdditionalData.setBatchTimestampKey(createDeviceTemplateRequest.getBatchTimestampKey());
+            deviceTemplateAdditionalData.setDeviceRateLimit(createDeviceTemplateRequest.getDeviceRateLimit());
+            deviceTemplateAdditionalData.setDeviceRateBurst(createDeviceTemplateRequest.getDeviceRateBurst());
+            deviceTemplateAdditionalData.setTemplateRateLimit(createDeviceTemplateRequest.getTemplateRateLimit());
+            deviceTemplateAdditionalData.setTemplateRateBurst(createDeviceTemplateRequest.getTemplateRateBurst());
+            deviceTemplateAdditionalData.setChangeFilter(createDeviceTemplateRequest.isChangeFilter());
+            deviceTemplateAdditionalData.setChangeFilterKeepAliveInterval(createDeviceTemplateRequest.getChangeFilterKeepAliveInterval());
+        });
         mqttDeviceService.syncTemplates();
+        mqttDeviceMqttService.onTemplateTopicsChanged();
     }
 
     private boolean isDeviceTemplateNameExists(String name) {
@@ -166,8 +193,20 @@ public class MqttDeviceTemplateService {
             DataCenter.removeTopic(oldTopic);
         }
         DataCenter.putTopic(topic, id);
-        saveDeviceOfflineTimeout(id, updateDeviceTemplateRequest.getDeviceOfflineTimeout());
+        saveDeviceTemplateAdditionalData(id, deviceTemplateAdditionalData -> {
+            deviceTemplateAdditionalData.setDeviceOfflineTimeout(updateDeviceTemplateRequest.getDeviceOfflineTimeout());
+            deviceTemplateAdditionalData.setPayloadEncoding(updateDeviceTemplateRequest.getPayloadEncoding());
+            deviceTemplateAdditionalData.setBatchPayload(updateDeviceTemplateRequest.isBatchPayload());
+            deviceTemplateAdditionalData.setBatchTimestampKey(updateDeviceTemplateRequest.getBatchTimestampKey());
+            deviceTemplateAdditionalData.setDeviceRateLimit(updateDeviceTemplateRequest.getDeviceRateLimit());
+            deviceTemplateAdditionalData.setDeviceRateBurst(updateDeviceTemplateRequest.getDeviceRateBurst());
+            deviceTemplateAdditionalData.setTemplateRateLimit(updateDeviceTemplateRequest.getTemplateRateLimit());
+            deviceTemplateAdditionalData.setTemplateRateBurst(updateDeviceTemplateRequest.getTemplateRateBurst());
+            deviceTemplateAdditionalData.setChangeFilter(updateDeviceTemplateRequest.isChangeFilter());
+            deviceTemplateAdditionalData.setChangeFilterKeepAliveInterval(updateDeviceTemplateRequest.getChangeFilterKeepAliveInterval());
+        });
         mqttDeviceService.syncTemplates();
+        mqttDeviceMqttService.onTemplateTopicsChanged();
     }
 
     public void batchDeleteDeviceTemplates(BatchDeleteDeviceTemplateRequest batchDeleteDeviceTemplateRequest) {
@@ -178,6 +217,7 @@ public class MqttDeviceTemplateService {
                 deviceTemplateServiceProvider.deleteById(id);
             });
             mqttDeviceService.syncTemplates();
+            mqttDeviceMqttService.onTemplateTopicsChanged();
         }
     }
 
@@ -270,13 +310,25 @@ public class MqttDeviceTemplateService {
         return testResponse;
     }
 
-    public void saveDeviceOfflineTimeout(Long deviceTemplateId, long deviceOfflineTimeout) {
+    public void saveDeviceTemplateAdditionalData(Long deviceTemplateId, Consumer<DeviceTemplateAdditionalData> updater) {
+        DataCenter.updateDeviceTemplateAdditionalData(deviceTemplateId, deviceTemplateAdditionalData -> {
+            updater.accept(deviceTemplateAdditionalData);
+            if (deviceTemplateAdditionalData.getPayloadEncoding() == null) {
+                deviceTemplateAdditionalData.setPayloadEncoding(PayloadEncoding.JSON);
+            }
+            if (StringUtils.isEmpty(deviceTemplateAdditionalData.getBatchTimestampKey())) {
+                deviceTemplateAdditionalData.setBatchTimestampKey(MqttDeviceConstants.DEFAULT_BATCH_TIMESTAMP_KEY);
+            }
+        });
+        publishDeviceTemplateAdditionalDataChanged();
+    }
+
+    /**
+     * @return the additional data of the template, or the defaults if it has none
+     */
+    public DeviceTemplateAdditionalData getDeviceTemplateAdditionalData(Long deviceTemplateId) {
         DeviceTemplateAdditionalData deviceTemplateAdditionalData = DataCenter.getDeviceTemplateAdditionalData(deviceTemplateId);
-        if (deviceTemplateAdditionalData == null) {
-            deviceTemplateAdditionalData = new DeviceTemplateAdditionalData();
-        }
-        deviceTemplateAdditionalData.setDeviceOfflineTimeout(deviceOfflineTimeout);
-        DataCenter.saveDeviceTemplateAdditionalData(deviceTemplateId, deviceTemplateAdditionalData);
+        return deviceTemplateAdditionalData == null ? new DeviceTemplateAdditionalData() : deviceTemplateAdditionalData;
     }
 
     public Duration getDeviceOfflineTimeout(Long deviceTemplateId) {
@@ -290,7 +342,7 @@ public class MqttDeviceTemplateService {
         }
 
         Map<Long, Duration> deviceOfflineTimeouts = new HashMap<>();
-        Map<Long, DeviceTemplateAdditionalData> deviceTemplateAdditionalDataMap = DataCenter.loadDeviceTemplateAdditionalDataMap();
+        Map<Long, DeviceTemplateAdditionalData> deviceTemplateAdditionalDataMap = DataCenter.getDeviceTemplateAdditionalDataMap();
         for (Long deviceTemplateId : deviceTemplateIds) {
             DeviceTemplateAdditionalData deviceTemplateAdditionalData = deviceTemplateAdditionalDataMap.get(deviceTemplateId);
             Duration deviceOfflineTimeout = deviceTemplateAdditionalData == null ? Duration.ofMinutes(MqttDeviceConstants.DEFAULT_DEVICE_OFFLINE_TIMEOUT) : Duration.ofMinutes(deviceTemplateAdditionalData.getDeviceOfflineTimeout());
@@ -301,5 +353,14 @@ public class MqttDeviceTemplateService {
 
     public void removeDeviceTemplateAdditionalData(Long deviceTemplateId) {
         DataCenter.removeDeviceTemplateAdditionalData(deviceTemplateId);
+        publishDeviceTemplateAdditionalDataChanged();
+    }
+
+    private void publishDeviceTemplateAdditionalDataChanged() {
+        messagePubSub.publish(DeviceTemplateAdditionalDataChangedMessage.builder().tenantId(TenantContext.getTenantId()).build());
+    }
+
+    private void onDeviceTemplateAdditionalDataChanged(DeviceTemplateAdditionalDataChangedMessage message) {
+        DataCenter.invalidateDeviceTemplateAdditionalDataCache(message.getTenantId());
     }
 }
\ No newline at end of file
@@ -3,10 +3,14 @@ package com.milesight.beaveriot.integrations.mqttdevice.support;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.milesight.beaveriot.base.utils.JsonUtils;
 import com.milesight.beaveriot.context.integration.wrapper.AnnotatedEntityWrapper;
+import com.milesight.beaveriot.context.security.TenantContext;
 import com.milesight.beaveriot.integrations.mqttdevice.entity.MqttDeviceIntegrationEntities;
 import com.milesight.beaveriot.integrations.mqttdevice.model.DeviceTemplateAdditionalData;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * author: Luxb
@@ -16,6 +20,8 @@ public class DataCenter {
     public static final String INTEGRATION_ID = "mqtt-device";
     public static final String DEFAULT_DEVICE_KEY = "device_key";
     public static final String DEVICE_ID_PLACEHOLDER = "${device_id}";
+    private static final TenantVersionedCache<TopicIndex> TOPIC_INDEX_CACHE = new TenantVersionedCache<>();
+    private static final TenantVersionedCache<Map<Long, DeviceTemplateAdditionalData>> DEVICE_TEMPLATE_ADDITIONAL_DATA_CACHE = new TenantVersionedCache<>();
 
     public static void putTopic(String topic, Long deviceTemplateId) {
         Map<String, Long> topicMap = loadTopicMap();
@@ -24,18 +30,11 @@ public class DataCenter {
     }
 
     public static String getTopic(Long deviceTemplateId) {
-        return loadTopicMap().entrySet().stream().filter(entry -> entry.getValue().equals(deviceTemplateId)).map(Map.Entry::getKey).findFirst().orElse(null);
+        return getTopicIndex().getTopicMap().entrySet().stream().filter(entry -> entry.getValue().equals(deviceTemplateId)).map(Map.Entry::getKey).findFirst().orElse(null);
     }
 
     public static Long getTemplateIdByTopic(String topic) {
-        Map<String, Long> topicMap = loadTopicMap();
-        for (String eachTopic : topicMap.keySet()) {
-            String topicPattern = TopicSupporter.convert(eachTopic);
-            if (TopicSupporter.matches(topicPattern, topic)) {
-                return topicMap.get(eachTopic);
-            }
-        }
-        return null;
+        return getTopicIndex().resolve(topic);
     }
 
     public static void removeTopic(String topic) {
@@ -51,7 +50,21 @@ public class DataCenter {
     }
 
     public static boolean isTopicExist(String topic) {
-        return loadTopicMap().containsKey(topic);
+        return getTopicIndex().getTopicMap().containsKey(topic);
+    }
+
+    /**
+     * Cached topic index of the current tenant, rebuilt only when the topic map changes.
+     */
+    public static TopicIndex getTopicIndex() {
+        return TOPIC_INDEX_CACHE.get(TenantContext.getTenantId(), () -> TopicIndex.of(loadTopicMap()));
+    }
+
+    /**
+     * Drop the cached topic index of a tenant, used when another node changed the topic map.
+     */
+    public static void invalidateTopicIndexCache(String tenantId) {
+        TOPIC_INDEX_CACHE.invalidate(tenantId);
     }
 
     public static Map<String, Long> loadTopicMap() {
@@ -64,6 +77,7 @@ public class DataCenter {
         String topicMapStr = JsonUtils.toJSON(topicMap);
         AnnotatedEntityWrapper<MqttDeviceIntegrationEntities> entitiesWrapper = new AnnotatedEntityWrapper<>();
         entitiesWrapper.saveValue(MqttDeviceIntegrationEntities::getTopicMap, topicMapStr).publishSync();
+        TOPIC_INDEX_CACHE.update(TenantContext.getTenantId(), cachedTopicIndex -> TopicIndex.of(topicMap));
     }
 
     public static Map<Long, DeviceTemplateAdditionalData> loadDeviceTemplateAdditionalDataMap() {
@@ -72,15 +86,27 @@ public class DataCenter {
         return JsonUtils.fromJSON(deviceTemplateAdditionalDataMapStr, new TypeReference<>() {});
     }
 
+    /**
+     * Cached, read-only view of the device template additional data of the current tenant.
+     */
+    public static Map<Long, DeviceTemplateAdditionalData> getDeviceTemplateAdditionalDataMap() {
+        return DEVICE_TEMPLATE_ADDITIONAL_DATA_CACHE.get(TenantContext.getTenantId(),
+                () -> Collections.unmodifiableMap(loadDeviceTemplateAdditionalDataMap()));
+    }
+
     public static DeviceTemplateAdditionalData getDeviceTemplateAdditionalData(Long deviceTemplateId) {
-        Map<Long, DeviceTemplateAdditionalData> deviceTemplateAdditionalDataMap = loadDeviceTemplateAdditionalDataMap();
-        return deviceTemplateAdditionalDataMap.get(deviceTemplateId);
+        return getDeviceTemplateAdditionalDataMap().get(deviceTemplateId);
     }
 
-    public static void saveDeviceTemplateAdditionalData(Long deviceTemplateId, DeviceTemplateAdditionalData deviceTemplateAdditionalData) {
+    /**
+     * Update the additional data of a device template from its persisted state, creating it if absent.
+     */
+    public static void updateDeviceTemplateAdditionalData(Long deviceTemplateId, Consumer<DeviceTemplateAdditionalData> updater) {
         Map<Long, DeviceTemplateAdditionalData> deviceTemplateAdditionalDataMap = loadDeviceTemplateAdditionalDataMap();
-        deviceTemplateAdditionalDataMap.put(deviceTemplateId, deviceTemplateAdditionalData);
+        DeviceTemplateAdditionalData deviceTemplateAdditionalData = deviceTemplateAdditionalDataMap.computeIfAbsent(deviceTemplateId, key -> new DeviceTemplateAdditionalData());
+        updater.accept(deviceTemplateAdditionalData);
         saveDeviceTemplateAdditionalDataMap(deviceTemplateAdditionalDataMap);
+        updateCachedDeviceTemplateAdditionalData(deviceTemplateId, deviceTemplateAdditionalData);
     }
 
     public static void saveDeviceTemplateAdditionalDataMap(Map<Long, DeviceTemplateAdditionalData> deviceTemplateAdditionalDataMap) {
@@ -93,5 +119,25 @@ public class DataCenter {
         Map<Long, DeviceTemplateAdditionalData> deviceTemplateAdditionalDataMap = loadDeviceTemplateAdditionalDataMap();
         deviceTemplateAdditionalDataMap.remove(deviceTemplateId);
         saveDeviceTemplateAdditionalDataMap(deviceTemplateAdditionalDataMap);
+        updateCachedDeviceTemplateAdditionalData(deviceTemplateId, null);
+    }
+
+    private static void updateCachedDeviceTemplateAdditionalData(Long deviceTemplateId, DeviceTemplateAdditionalData deviceTemplateAdditionalData) {
+        DEVICE_TEMPLATE_ADDITIONAL_DATA_CACHE.update(TenantContext.getTenantId(), cachedMap -> {
+            Map<Long, DeviceTemplateAdditionalData> newMap = new HashMap<>(cachedMap);
+            if (deviceTemplateAdditionalData == null) {
+                newMap.remove(deviceTemplateId);
+            } else {
+                newMap.put(deviceTemplateId, deviceTemplateAdditionalData);
+            }
+            return Collections.unmodifiableMap(newMap);
+        });
+    }
+
+    /**
+     * Drop the cached additional data of a tenant, used when another node changed it.
+     */
+    public static void invalidateDeviceTemplateAdditionalDataCache(String tenantId) {
+        DEVICE_TEMPLATE_ADDITIONAL_DATA_CACHE.invalidate(tenantId);
     }
 }
@@ -0,0 +1,138 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads the identifier of the sending device from a JSON payload without parsing it with the device template, so
+ * that messages on a fixed template topic can be rate limited and queued per device. The payload field holding the
+ * identifier, possibly in nested objects, is learned per template from the devices the template parser returns: it
+ * is the field whose value equals the identifier. While several fields match, the next payloads narrow them down,
+ * so a template is only unresolved until its payloads tell the identifier field apart.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/19 9:20
+ **/
+public class DeviceIdentifierResolver {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int MAX_DEPTH = 8;
+    // Path of field names to the identifier field, by tenant and template
+    private final Map<String, List<String>> deviceIdPaths = new ConcurrentHashMap<>();
+    // Paths still matching every payload learned from, by tenant and template, until one is left
+    private final Map<String, Set<List<String>>> candidatePaths = new ConcurrentHashMap<>();
+
+    /**
+     * @return the identifier of the device that sent the payload, null while the template's identifier field is unknown
+     */
+    public String resolve(String tenantId, Long deviceTemplateId, String jsonData) {
+        List<String> deviceIdPath = deviceIdPaths.get(getKey(tenantId, deviceTemplateId));
+        if (deviceIdPath == null) {
+            return null;
+        }
+
+        try (JsonParser parser = JSON_FACTORY.createParser(jsonData)) {
+            JsonToken token = parser.nextToken();
+            for (String fieldName : deviceIdPath) {
+                if (token != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                token = nextFieldValue(parser, fieldName);
+            }
+            return token != null && token.isScalarValue() && token != JsonToken.VALUE_NULL ? parser.getText() : null;
+        } catch (IOException e) {
+            // Invalid payloads are reported by the template parser
+            return null;
+        }
+    }
+
+    /**
+     * Move the parser to the value of the field in the current object.
+     *
+     * @return the token of the value, null if the object has no such field
+     */
+    private static JsonToken nextFieldValue(JsonParser parser, String fieldName) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String currentName = parser.currentName();
+            JsonToken valueToken = parser.nextToken();
+            if (fieldName.equals(currentName)) {
+                return valueToken;
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    /**
+     * Learn the identifier field of the template from a payload and the identifier the template parser found in it.
+     */
+    public void learn(String tenantId, Long deviceTemplateId, String jsonData, String deviceIdentifier) {
+        String key = getKey(tenantId, deviceTemplateId);
+        if (deviceIdentifier == null || deviceIdPaths.containsKey(key)) {
+            return;
+        }
+
+        Set<List<String>> matchingPaths = new HashSet<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(jsonData)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                collectMatchingPaths(parser, deviceIdentifier, new ArrayList<>(), matchingPaths);
+            }
+        } catch (IOException e) {
+            return;
+        }
+        if (matchingPaths.isEmpty()) {
+            return;
+        }
+
+        Set<List<String>> candidates = candidatePaths.compute(key, (k, previous) -> {
+            if (previous == null) {
+                return matchingPaths;
+            }
+            Set<List<String>> remaining = new HashSet<>(previous);
+            remaining.retainAll(matchingPaths);
+            // No field matched every payload, start over from this one
+            return remaining.isEmpty() ? matchingPaths : remaining;
+        });
+        if (candidates.size() == 1) {
+            deviceIdPaths.putIfAbsent(key, candidates.iterator().next());
+            candidatePaths.remove(key);
+        }
+    }
+
+    private static void collectMatchingPaths(JsonParser parser, String deviceIdentifier, List<String> path, Set<List<String>> matchingPaths) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken valueToken = parser.nextToken();
+            if (valueToken == JsonToken.START_OBJECT && path.size() < MAX_DEPTH) {
+                path.add(fieldName);
+                collectMatchingPaths(parser, deviceIdentifier, path, matchingPaths);
+                path.remove(path.size() - 1);
+            } else if (valueToken.isScalarValue()) {
+                if (valueToken != JsonToken.VALUE_NULL && deviceIdentifier.equals(parser.getText())) {
+                    List<String> matchingPath = new ArrayList<>(path);
+                    matchingPath.add(fieldName);
+                    matchingPaths.add(List.copyOf(matchingPath));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Forget the identifier fields of a tenant's templates, used when its templates changed.
+     */
+    public void forget(String tenantId) {
+        String prefix = tenantId + ":";
+        deviceIdPaths.keySet().removeIf(key -> key.startsWith(prefix));
+        candidatePaths.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private static String getKey(String tenantId, Long deviceTemplateId) {
+        return tenantId + ":" + deviceTemplateId;
+    }
+}
@@ -0,0 +1,165 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import com.milesight.beaveriot.context.integration.model.ExchangePayload;
+import com.milesight.beaveriot.context.security.TenantContext;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Accumulates decoded payloads for up to {@code maxSize} messages or {@code maxDelay} and writes them as
+ * a few combined payloads instead of one write per message. Writes only run on the flusher thread, which sets the
+ * tenant of each batch, so the threads adding payloads never have their tenant changed.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 10:05
+ **/
+@Slf4j
+public class EntityValueWriteBatcher {
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private final String name;
+    private final int maxSize;
+    private final Consumer<ExchangePayload> writer;
+    private final ScheduledExecutorService flushScheduler;
+    private final DistributionSummary batchSizeSummary;
+    private final MeterRegistry meterRegistry;
+    private final Object pendingLock = new Object();
+    private Map<String, List<TimedPayload>> pendingPayloads = new LinkedHashMap<>();
+    private int pendingCount;
+
+    public EntityValueWriteBatcher(String name, int maxSize, Duration maxDelay, Consumer<ExchangePayload> writer, MeterRegistry meterRegistry) {
+        if (maxSize <= 0 || maxDelay.isZero() || maxDelay.isNegative()) {
+            throw new IllegalArgumentException("Batch max size and max delay must be positive");
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.writer = writer;
+        this.meterRegistry = meterRegistry;
+        this.batchSizeSummary = DistributionSummary.builder(name + ".batch.size")
+                .description("Messages combined into one flush")
+                .register(meterRegistry);
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-batch-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long maxDelayMillis = Math.max(1, maxDelay.toMillis());
+        this.flushScheduler.scheduleWithFixedDelay(this::flushQuietly, maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void add(String tenantId, ExchangePayload payload) {
+        add(tenantId, payload, null);
+    }
+
+    /**
+     * @param timestamp time the values were recorded at, null for the time they are written
+     */
+    public void add(String tenantId, ExchangePayload payload, Long timestamp) {
+        boolean isFull;
+        synchronized (pendingLock) {
+            pendingPayloads.computeIfAbsent(tenantId, key -> new ArrayList<>()).add(new TimedPayload(payload, timestamp));
+            isFull = ++pendingCount >= maxSize;
+        }
+
+        if (isFull) {
+            requestFlush();
+        }
+    }
+
+    private void requestFlush() {
+        try {
+            flushScheduler.execute(this::flushQuietly);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the final flush writes what is pending
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("{} batch flush error: ", name, e);
+        }
+    }
+
+    private void flush() {
+        Map<String, List<TimedPayload>> toFlushPayloads;
+        int toFlushCount;
+        synchronized (pendingLock) {
+            if (pendingCount == 0) {
+                return;
+            }
+            toFlushPayloads = pendingPayloads;
+            toFlushCount = pendingCount;
+            pendingPayloads = new LinkedHashMap<>();
+            pendingCount = 0;
+        }
+
+        batchSizeSummary.record(toFlushCount);
+        toFlushPayloads.forEach((tenantId, payloads) -> {
+            TenantContext.setTenantId(tenantId);
+            for (ExchangePayload mergedPayload : merge(payloads)) {
+                try {
+                    writer.accept(mergedPayload);
+                } catch (Exception e) {
+                    log.error("{} batch write error, tenantId: {}, error: ", name, tenantId, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Merge payloads in arrival order. A payload sharing a key with the payload being built starts a new one,
+     * so an older reading of an entity is written before, and never overwritten by, a newer one. Payloads recorded
+     * at a given time are only merged with payloads recorded at the same time.
+     */
+    public static List<ExchangePayload> merge(List<TimedPayload> payloads) {
+        List<ExchangePayload> mergedPayloads = new ArrayList<>();
+        ExchangePayload current = new ExchangePayload();
+        Long currentTimestamp = null;
+        for (TimedPayload timedPayload : payloads) {
+            ExchangePayload payload = timedPayload.payload();
+            if (!current.isEmpty() && (!Objects.equals(currentTimestamp, timedPayload.timestamp()) || !Collections.disjoint(current.keySet(), payload.keySet()))) {
+                mergedPayloads.add(current);
+                current = new ExchangePayload();
+            }
+            if (timedPayload.timestamp() != null) {
+                current.setTimestamp(timedPayload.timestamp());
+            }
+            currentTimestamp = timedPayload.timestamp();
+            current.putAll(payload);
+        }
+
+        if (!current.isEmpty()) {
+            mergedPayloads.add(current);
+        }
+        return mergedPayloads;
+    }
+
+    /**
+     * @param timestamp time the values were recorded at, null for the time they are written
+     */
+    public record TimedPayload(ExchangePayload payload, Long timestamp) {
+    }
+
+    public void shutdown() {
+        requestFlush();
+        flushScheduler.shutdown();
+        try {
+            if (!flushScheduler.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("{} batch flush did not complete within {} seconds", name, SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        meterRegistry.remove(batchSizeSummary);
+    }
+}
@@ -0,0 +1,117 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import com.milesight.beaveriot.integrations.mqttdevice.enums.RateLimitExcessAction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-device and per-template token buckets, checked as soon as the device of a message is known: before decoding
+ * when the topic or the payload tells the device, otherwise after the template parser found it. Messages over a limit
+ * are dropped or sampled, and the devices they came from are counted per tenant until drained by a reporter.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 15:15
+ **/
+public class IngestRateLimiter {
+    private static final String DEVICE_BUCKET_PREFIX = "device:";
+    private static final String TEMPLATE_BUCKET_PREFIX = "template:";
+    private final RateLimitExcessAction excessAction;
+    private final int sampleRatio;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, LongAdder>> tenantOffenders = new ConcurrentHashMap<>();
+    private final AtomicLong excessCount = new AtomicLong();
+    private final Counter deviceLimitedCounter;
+    private final Counter templateLimitedCounter;
+    private final Counter sampledCounter;
+
+    public IngestRateLimiter(String name, RateLimitExcessAction excessAction, int sampleRatio, MeterRegistry meterRegistry) {
+        this.excessAction = excessAction;
+        this.sampleRatio = Math.max(1, sampleRatio);
+        this.meterRegistry = meterRegistry;
+        this.deviceLimitedCounter = Counter.builder(name + ".rate-limited")
+                .description("Messages over a rate limit")
+                .tag("scope", "device")
+                .register(meterRegistry);
+        this.templateLimitedCounter = Counter.builder(name + ".rate-limited")
+                .description("Messages over a rate limit")
+                .tag("scope", "template")
+                .register(meterRegistry);
+        this.sampledCounter = Counter.builder(name + ".rate-limited.sampled")
+                .description("Messages over a rate limit kept by sampling")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param deviceRate    messages per second allowed for the device, unlimited if not positive
+     * @param templateRate  messages per second allowed for all devices of the template, unlimited if not positive
+     * @return true if the message may be processed
+     */
+    public boolean tryAcquire(String tenantId, String deviceKey, Long deviceTemplateId, double deviceRate, int deviceBurst, double templateRate, int templateBurst) {
+        Counter limitedCounter = null;
+        if (!tryAcquire(DEVICE_BUCKET_PREFIX + tenantId + ":" + deviceKey, deviceRate, deviceBurst)) {
+            limitedCounter = deviceLimitedCounter;
+        } else if (!tryAcquire(TEMPLATE_BUCKET_PREFIX + tenantId + ":" + deviceTemplateId, templateRate, templateBurst)) {
+            limitedCounter = templateLimitedCounter;
+        }
+
+        if (limitedCounter == null) {
+            return true;
+        }
+
+        limitedCounter.increment();
+        tenantOffenders.computeIfAbsent(tenantId, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(deviceKey, key -> new LongAdder())
+                .increment();
+        if (excessAction == RateLimitExcessAction.SAMPLE && excessCount.incrementAndGet() % sampleRatio == 0) {
+            sampledCounter.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean tryAcquire(String bucketKey, double rate, int burst) {
+        if (rate <= 0) {
+            return true;
+        }
+
+        TokenBucket bucket = buckets.compute(bucketKey, (key, existing) ->
+                existing != null && existing.hasSameLimit(rate, burst) ? existing : new TokenBucket(rate, burst));
+        return bucket.tryAcquire();
+    }
+
+    /**
+     * Take the limited message count of each device since the previous call, per tenant.
+     */
+    public Map<String, Map<String, Long>> drainOffenders() {
+        Map<String, Map<String, Long>> offenders = new HashMap<>();
+        tenantOffenders.keySet().forEach(tenantId -> {
+            Map<String, LongAdder> deviceOffenders = tenantOffenders.remove(tenantId);
+            if (deviceOffenders != null) {
+                Map<String, Long> counts = new HashMap<>();
+                deviceOffenders.forEach((deviceKey, count) -> counts.put(deviceKey, count.sum()));
+                offenders.put(tenantId, counts);
+            }
+        });
+        return offenders;
+    }
+
+    public void evictIdleBuckets(Duration idleTimeout) {
+        long idleSince = System.nanoTime() - idleTimeout.toNanos();
+        buckets.values().removeIf(bucket -> bucket.isIdleSince(idleSince));
+    }
+
+    public void shutdown() {
+        List<Meter> meters = List.of(deviceLimitedCounter, templateLimitedCounter, sampledCounter);
+        meters.forEach(meterRegistry::remove);
+    }
+}
@@ -0,0 +1,172 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import com.milesight.beaveriot.integrations.mqttdevice.enums.IngestOverflowPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Hash-partitioned executor: every partition key is bound to one single-threaded lane with a bounded queue,
+ * so tasks of the same key run in submission order while different keys run in parallel.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 9:20
+ **/
+@Slf4j
+public class OrderedLaneExecutor {
+    private final String name;
+    private final ThreadPoolExecutor[] lanes;
+    private final IngestOverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final Timer latencyTimer;
+    private final Counter rejectedCounter;
+    private final MeterRegistry meterRegistry;
+    private final List<Meter> meters;
+
+    public OrderedLaneExecutor(String name, int laneCount, int queueSize, IngestOverflowPolicy overflowPolicy, Duration blockTimeout, MeterRegistry meterRegistry) {
+        if (laneCount <= 0 || queueSize <= 0) {
+            throw new IllegalArgumentException("Lane count and queue size must be positive");
+        }
+        this.name = name;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = blockTimeout.toNanos();
+        this.lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = buildLane(i, queueSize);
+        }
+
+        this.meterRegistry = meterRegistry;
+        this.latencyTimer = Timer.builder(name + ".latency")
+                .description("Time from enqueue to task completion")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder(name + ".rejected")
+                .description("Tasks dropped because the lane was full or the executor was shut down")
+                .register(meterRegistry);
+        Gauge queueDepthGauge = Gauge.builder(name + ".queue.depth", this, OrderedLaneExecutor::getQueueDepth)
+                .description("Tasks waiting in all lanes")
+                .register(meterRegistry);
+        Gauge maxLaneQueueDepthGauge = Gauge.builder(name + ".queue.max-lane-depth", this, OrderedLaneExecutor::getMaxLaneQueueDepth)
+                .description("Tasks waiting in the busiest lane")
+                .register(meterRegistry);
+        this.meters = List.of(latencyTimer, rejectedCounter, queueDepthGauge, maxLaneQueueDepthGauge);
+    }
+
+    private ThreadPoolExecutor buildLane(int index, int queueSize) {
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-lane-" + index);
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Submit a task to the lane owning the partition key.
+     *
+     * @return false if the task was dropped by the overflow policy
+     */
+    public boolean execute(String partitionKey, Runnable task) {
+        ThreadPoolExecutor lane = lanes[Math.floorMod(partitionKey.hashCode(), lanes.length)];
+        Runnable timedTask = wrap(task);
+        try {
+            lane.execute(timedTask);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return onOverflow(lane, timedTask);
+        }
+    }
+
+    private boolean onOverflow(ThreadPoolExecutor lane, Runnable task) {
+        if (lane.isShutdown()) {
+            rejectedCounter.increment();
+            return false;
+        }
+
+        boolean accepted = false;
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                try {
+                    accepted = lane.getQueue().offer(task, blockTimeoutNanos, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            case DISCARD_OLDEST -> {
+                if (lane.getQueue().poll() != null) {
+                    rejectedCounter.increment();
+                }
+                accepted = lane.getQueue().offer(task);
+            }
+            default -> {
+                // DISCARD: nothing to do
+            }
+        }
+
+        if (!accepted) {
+            rejectedCounter.increment();
+            log.warn("{} lane is full, task dropped by overflow policy {}", name, overflowPolicy);
+        }
+        return accepted;
+    }
+
+    private Runnable wrap(Runnable task) {
+        long enqueuedAt = System.nanoTime();
+        return () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("{} task error: ", name, e);
+            } finally {
+                latencyTimer.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size();
+        }
+        return depth;
+    }
+
+    public int getMaxLaneQueueDepth() {
+        int maxDepth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            maxDepth = Math.max(maxDepth, lane.getQueue().size());
+        }
+        return maxDepth;
+    }
+
+    public void shutdown(Duration timeout) {
+        // Meters are bound to this instance, remove them so that a new executor can register its own
+        meters.forEach(meterRegistry::remove);
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            for (ThreadPoolExecutor lane : lanes) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !lane.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                    lane.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            for (ThreadPoolExecutor lane : lanes) {
+                lane.shutdownNow();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+}
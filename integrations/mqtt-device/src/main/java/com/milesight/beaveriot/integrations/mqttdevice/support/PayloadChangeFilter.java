@@ -0,0 +1,89 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers a 64-bit hash of the last payload written for each device, so that a device republishing the same
+ * values can skip the write.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 16:05
+ **/
+public class PayloadChangeFilter {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+
+    public enum Decision {
+        /**
+         * The payload changed, or is the first one of the device: write it as latest value
+         */
+        CHANGED,
+        /**
+         * Unchanged, but the keep-alive interval elapsed since the last write: record it as history only
+         */
+        KEEP_ALIVE,
+        /**
+         * Unchanged: skip the write
+         */
+        UNCHANGED
+    }
+
+    /**
+     * @param keepAliveMillis interval after which an unchanged payload is recorded again, never if not positive
+     */
+    public Decision check(String deviceKey, Map<String, Object> payload, long keepAliveMillis) {
+        long hash = hash(payload);
+        long now = System.currentTimeMillis();
+        Decision[] decision = new Decision[1];
+        states.compute(deviceKey, (key, state) -> {
+            if (state == null || state.hash() != hash) {
+                decision[0] = Decision.CHANGED;
+                return new State(hash, now);
+            }
+            if (keepAliveMillis > 0 && now - state.writtenAt() >= keepAliveMillis) {
+                decision[0] = Decision.KEEP_ALIVE;
+                return new State(hash, now);
+            }
+            decision[0] = Decision.UNCHANGED;
+            return state;
+        });
+        return decision[0];
+    }
+
+    public void forget(String deviceKey) {
+        states.remove(deviceKey);
+    }
+
+    /**
+     * Order independent hash of the entries, so that two maps with the same content always hash the same.
+     */
+    static long hash(Map<String, Object> payload) {
+        long hash = 0;
+        for (Map.Entry<String, Object> entry : payload.entrySet()) {
+            long entryHash = fnv1a(FNV_OFFSET_BASIS, entry.getKey());
+            entryHash = fnv1a(entryHash ^ '=', String.valueOf(entry.getValue()));
+            hash += mix(entryHash);
+        }
+        return hash;
+    }
+
+    private static long fnv1a(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // Finalizer of SplitMix64, spreads the bits so that summing entry hashes does not cancel them out
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    private record State(long hash, long writtenAt) {
+    }
+}
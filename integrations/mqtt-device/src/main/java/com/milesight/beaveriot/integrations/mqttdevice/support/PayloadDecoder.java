@@ -0,0 +1,50 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.milesight.beaveriot.base.enums.ErrorCode;
+import com.milesight.beaveriot.base.exception.ServiceException;
+import com.milesight.beaveriot.integrations.mqttdevice.enums.PayloadEncoding;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns a raw MQTT payload into the JSON text the device template parser takes as input.
+ * Binary payloads are transcoded token by token, without building an intermediate object tree.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 13:15
+ **/
+public class PayloadDecoder {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+    private static final MessagePackFactory MESSAGE_PACK_FACTORY = new MessagePackFactory();
+
+    private PayloadDecoder() {
+    }
+
+    public static String toJson(byte[] payload, PayloadEncoding payloadEncoding) {
+        if (payloadEncoding == null || payloadEncoding == PayloadEncoding.JSON) {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+
+        JsonFactory binaryFactory = payloadEncoding == PayloadEncoding.CBOR ? CBOR_FACTORY : MESSAGE_PACK_FACTORY;
+        try (JsonParser parser = binaryFactory.createParser(payload);
+             StringWriter writer = new StringWriter(payload.length * 2);
+             JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            if (parser.nextToken() == null) {
+                throw ServiceException.with(ErrorCode.PARAMETER_VALIDATION_FAILED.getErrorCode(), "Empty " + payloadEncoding + " payload").build();
+            }
+            generator.copyCurrentStructure(parser);
+            generator.flush();
+            return writer.toString();
+        } catch (IOException e) {
+            throw ServiceException.with(ErrorCode.PARAMETER_VALIDATION_FAILED.getErrorCode(), "Invalid " + payloadEncoding + " payload: " + e.getMessage()).build();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import java.util.*;
+
+/**
+ * Immutable lookup structure over a template topic map. Topics without a device id placeholder are resolved
+ * with a single hash lookup, the others are only matched against patterns having the same number of levels.
+ * A topic matched against a pattern also yields the device identifier found in place of the placeholder.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 14:20
+ **/
+public class TopicIndex {
+    private static final TopicIndex EMPTY = new TopicIndex(Collections.emptyMap());
+
+    private final Map<String, Long> topicMap;
+    private final Map<String, Long> exactTopics = new HashMap<>();
+    private final Map<Integer, List<TopicPattern>> patternsByLevels = new HashMap<>();
+
+    private TopicIndex(Map<String, Long> topicMap) {
+        this.topicMap = Collections.unmodifiableMap(new HashMap<>(topicMap));
+        this.topicMap.forEach((topic, deviceTemplateId) -> {
+            String topicPattern = TopicSupporter.convert(topic);
+            String[] levels = topicPattern.split("/");
+            int deviceIdLevel = Arrays.asList(levels).indexOf("+");
+            if (deviceIdLevel >= 0) {
+                patternsByLevels.computeIfAbsent(levels.length, key -> new ArrayList<>()).add(new TopicPattern(levels, deviceIdLevel, deviceTemplateId));
+            } else {
+                exactTopics.put(topicPattern, deviceTemplateId);
+            }
+        });
+    }
+
+    public static TopicIndex of(Map<String, Long> topicMap) {
+        return topicMap.isEmpty() ? EMPTY : new TopicIndex(topicMap);
+    }
+
+    public Map<String, Long> getTopicMap() {
+        return topicMap;
+    }
+
+    public Long resolve(String topic) {
+        TopicMatch topicMatch = match(topic);
+        return topicMatch == null ? null : topicMatch.deviceTemplateId();
+    }
+
+    /**
+     * @return the template of the topic and the device identifier it carries, null if no template topic matches
+     */
+    public TopicMatch match(String topic) {
+        Long deviceTemplateId = exactTopics.get(topic);
+        if (deviceTemplateId != null) {
+            return new TopicMatch(deviceTemplateId, null);
+        }
+
+        String[] levels = topic.split("/");
+        List<TopicPattern> patterns = patternsByLevels.get(levels.length);
+        if (patterns == null) {
+            return null;
+        }
+
+        for (TopicPattern pattern : patterns) {
+            if (pattern.matches(levels)) {
+                return new TopicMatch(pattern.deviceTemplateId(), levels[pattern.deviceIdLevel()]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param deviceIdentifier level of the topic in place of the device id placeholder, null if the template topic has none
+     */
+    public record TopicMatch(Long deviceTemplateId, String deviceIdentifier) {
+    }
+
+    private record TopicPattern(String[] levels, int deviceIdLevel, Long deviceTemplateId) {
+        boolean matches(String[] topicLevels) {
+            for (int i = 0; i < levels.length; i++) {
+                if (!levels[i].equals("+") && !levels[i].equals(topicLevels[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import lombok.Getter;
+
+import java.util.*;
+
+/**
+ * Reference counts the topic filters subscribed on behalf of each tenant, so a filter is subscribed once
+ * and only unsubscribed when no tenant needs it anymore.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 13:50
+ **/
+public class TopicSubscriptionRegistry {
+    private final Map<String, Set<String>> tenantTopicFilters = new HashMap<>();
+    private final Map<String, Set<String>> topicFilterTenants = new HashMap<>();
+
+    public synchronized Change update(String tenantId, Set<String> topicFilters) {
+        Set<String> oldTopicFilters = tenantTopicFilters.getOrDefault(tenantId, Collections.emptySet());
+        Change change = new Change();
+        for (String topicFilter : topicFilters) {
+            if (!oldTopicFilters.contains(topicFilter)) {
+                Set<String> tenants = topicFilterTenants.computeIfAbsent(topicFilter, key -> new HashSet<>());
+                if (tenants.isEmpty()) {
+                    change.toSubscribe.add(topicFilter);
+                }
+                tenants.add(tenantId);
+            }
+        }
+
+        for (String oldTopicFilter : oldTopicFilters) {
+            if (!topicFilters.contains(oldTopicFilter)) {
+                Set<String> tenants = topicFilterTenants.get(oldTopicFilter);
+                tenants.remove(tenantId);
+                if (tenants.isEmpty()) {
+                    topicFilterTenants.remove(oldTopicFilter);
+                    change.toUnsubscribe.add(oldTopicFilter);
+                }
+            }
+        }
+
+        if (topicFilters.isEmpty()) {
+            tenantTopicFilters.remove(tenantId);
+        } else {
+            tenantTopicFilters.put(tenantId, new HashSet<>(topicFilters));
+        }
+        return change;
+    }
+
+    public synchronized Set<String> clear() {
+        Set<String> topicFilters = new HashSet<>(topicFilterTenants.keySet());
+        tenantTopicFilters.clear();
+        topicFilterTenants.clear();
+        return topicFilters;
+    }
+
+    @Getter
+    public static class Change {
+        private final List<String> toSubscribe = new ArrayList<>();
+        private final List<String> toUnsubscribe = new ArrayList<>();
+    }
+}
@@ -32,4 +32,8 @@ public class TopicSupporter {
     public static String convert(String topic) {
         return topic.replace(DataCenter.DEVICE_ID_PLACEHOLDER, "+");
     }
+
+    public static String toTopicFilter(String topic) {
+        return DataCenter.INTEGRATION_ID + convert(topic);
+    }
 }
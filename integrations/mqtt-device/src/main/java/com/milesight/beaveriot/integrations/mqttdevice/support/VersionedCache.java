@@ -0,0 +1,69 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cache of values that are expensive to load. Every change bumps the key's version, and a value loaded while the
+ * version moved on is returned to its caller but never cached, so a slow load cannot overwrite a newer update or
+ * invalidation.
+ * <p>
+ * Cached values are shared between threads and must not be mutated, updates replace them instead.
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 20:20
+ **/
+public class VersionedCache<K, V> {
+    private final Map<K, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    public V get(K key, Supplier<V> loader) {
+        AtomicLong version = getVersion(key);
+        long loadVersion = version.get();
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.version() == loadVersion) {
+            return entry.value();
+        }
+
+        V value = loader.get();
+        entries.compute(key, (k, existing) -> version.get() == loadVersion ? new Entry<>(loadVersion, value) : existing);
+        return value;
+    }
+
+    /**
+     * Apply a change that was already persisted to the cached value, if there is one.
+     */
+    public void update(K key, UnaryOperator<V> updater) {
+        AtomicLong version = getVersion(key);
+        entries.compute(key, (k, existing) -> {
+            long newVersion = version.incrementAndGet();
+            return existing == null ? null : new Entry<>(newVersion, updater.apply(existing.value()));
+        });
+    }
+
+    /**
+     * Replace the cached value with one that was just loaded and persisted.
+     */
+    public void put(K key, V value) {
+        AtomicLong version = getVersion(key);
+        entries.compute(key, (k, existing) -> new Entry<>(version.incrementAndGet(), value));
+    }
+
+    public void invalidate(K key) {
+        AtomicLong version = getVersion(key);
+        entries.compute(key, (k, existing) -> {
+            version.incrementAndGet();
+            return null;
+        });
+    }
+
+    private AtomicLong getVersion(K key) {
+        return versions.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    private record Entry<V>(long version, V value) {
+    }
+}
@@ -0,0 +1,258 @@
+package com.milesight.beaveriot.integrations.mqttdevice.benchmark;
+
+import com.milesight.beaveriot.context.api.*;
+import com.milesight.beaveriot.context.integration.model.Device;
+import com.milesight.beaveriot.context.integration.model.ExchangePayload;
+import com.milesight.beaveriot.context.model.response.DeviceTemplateInputResult;
+import com.milesight.beaveriot.context.mqtt.model.MqttMessage;
+import com.milesight.beaveriot.context.security.TenantContext;
+import com.milesight.beaveriot.integrations.mqttdevice.config.MqttDeviceIngestProperties;
+import com.milesight.beaveriot.integrations.mqttdevice.model.DeviceTemplateAdditionalData;
+import com.milesight.beaveriot.integrations.mqttdevice.service.MqttDeviceMqttService;
+import com.milesight.beaveriot.integrations.mqttdevice.service.MqttDeviceRateLimitService;
+import com.milesight.beaveriot.integrations.mqttdevice.service.MqttDeviceRegistrationService;
+import com.milesight.beaveriot.integrations.mqttdevice.support.DataCenter;
+import com.milesight.beaveriot.integrations.mqttdevice.support.TopicIndex;
+import com.milesight.beaveriot.pubsub.MessagePubSub;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.javacrumbs.shedlock.core.LockProvider;
+import net.javacrumbs.shedlock.core.SimpleLock;
+import org.mockito.ArgumentMatchers;
+import org.mockito.MockedStatic;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * In-process load test of the ingest path, from the MQTT subscription callback to the entity value write. The
+ * platform providers are stubs, so the figures cover the integration's own work: topic resolution, rate limiting,
+ * payload decoding, lane dispatch, device registration and write batching.
+ * <p>
+ * Synthetic readings of {@code devices} devices are replayed at {@code rate} messages per second for
+ * {@code duration} seconds, then throughput, p50/p99 latency from publish to write, and allocation rate are printed.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.milesight.beaveriot.integrations.mqttdevice.benchmark.MqttDeviceIngestLoadHarness -Drate=20000 -Dduration=30 -Ddevices=5000}
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 17:10
+ **/
+public class MqttDeviceIngestLoadHarness {
+    private static final String TENANT_ID = "harness";
+    private static final Long TEMPLATE_ID = 1L;
+    private static final String TEMPLATE_TOPIC = "/site/" + DataCenter.DEVICE_ID_PLACEHOLDER + "/telemetry";
+    private static final String SENT_AT_KEY_SUFFIX = ".harness_sent_at";
+
+    private final int rate = Integer.getInteger("rate", 10_000);
+    private final int durationSeconds = Integer.getInteger("duration", 30);
+    private final int deviceCount = Integer.getInteger("devices", 1_000);
+    private final boolean batchEnabled = Boolean.getBoolean("batch");
+
+    private final List<Queue<Long>> sentAtQueues = new ArrayList<>();
+    private final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+    private final AtomicLong savedCount = new AtomicLong();
+    private final Map<String, DeviceTemplateInputResult> inputResults = new HashMap<>();
+    private final List<MqttMessage> messages = new ArrayList<>();
+    private Consumer<MqttMessage> listener;
+
+    public static void main(String[] args) throws Exception {
+        new MqttDeviceIngestLoadHarness().run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        MqttDeviceIngestProperties ingestProperties = new MqttDeviceIngestProperties();
+        ingestProperties.getBatch().setEnabled(batchEnabled);
+        ingestProperties.getRateLimit().setOffenderReportInterval(Duration.ofHours(1));
+        ObjectProvider<MeterRegistry> meterRegistryProvider = meterRegistryProvider(new SimpleMeterRegistry());
+        MessagePubSub messagePubSub = stub(MessagePubSub.class);
+
+        MqttPubSubServiceProvider mqttPubSubServiceProvider = stub(MqttPubSubServiceProvider.class);
+        doAnswer(invocation -> {
+            listener = invocation.getArgument(1);
+            return null;
+        }).when(mqttPubSubServiceProvider).subscribe(anyString(), ArgumentMatchers.<Consumer<MqttMessage>>any());
+
+        DeviceTemplateParserProvider deviceTemplateParserProvider = stub(DeviceTemplateParserProvider.class);
+        when(deviceTemplateParserProvider.input(anyString(), anyLong(), anyString()))
+                .thenAnswer(invocation -> inputResults.get(invocation.<String>getArgument(2)));
+
+        DeviceServiceProvider deviceServiceProvider = stub(DeviceServiceProvider.class);
+        when(deviceServiceProvider.findByIdentifiers(anyList(), anyString())).thenReturn(List.of());
+
+        LockProvider lockProvider = stub(LockProvider.class);
+        when(lockProvider.lock(any())).thenReturn(Optional.of(stub(SimpleLock.class)));
+
+        EntityValueServiceProvider entityValueServiceProvider = stub(EntityValueServiceProvider.class);
+        doAnswer(invocation -> {
+            onSaved(invocation.getArgument(0));
+            return null;
+        }).when(entityValueServiceProvider).saveValuesAndPublishAsync(any());
+
+        prepareDevices();
+
+        MqttDeviceRegistrationService registrationService = new MqttDeviceRegistrationService(deviceServiceProvider, messagePubSub, lockProvider, ingestProperties, meterRegistryProvider);
+        MqttDeviceRateLimitService rateLimitService = new MqttDeviceRateLimitService(ingestProperties, meterRegistryProvider);
+        MqttDeviceMqttService mqttService = new MqttDeviceMqttService(mqttPubSubServiceProvider, deviceTemplateParserProvider, registrationService,
+                rateLimitService, entityValueServiceProvider, stub(DeviceStatusServiceProvider.class), ingestProperties, messagePubSub, meterRegistryProvider);
+
+        // The DataCenter lookups only run on the publishing thread, which is the thread the static mock applies to
+        TopicIndex topicIndex = TopicIndex.of(Map.of(TEMPLATE_TOPIC, TEMPLATE_ID));
+        DeviceTemplateAdditionalData additionalData = new DeviceTemplateAdditionalData();
+        try (MockedStatic<DataCenter> dataCenter = mockStatic(DataCenter.class, withSettings().stubOnly().defaultAnswer(CALLS_REAL_METHODS))) {
+            dataCenter.when(DataCenter::getTopicIndex).thenReturn(topicIndex);
+            dataCenter.when(() -> DataCenter.getDeviceTemplateAdditionalData(anyLong())).thenReturn(additionalData);
+
+            TenantContext.setTenantId(TENANT_ID);
+            registrationService.init();
+            mqttService.subscribe();
+
+            // A first pass registers the devices, so that the measured pass sees steady state traffic
+            long warmUpPublished = publish(Math.max(rate, deviceCount), 1);
+            awaitSaved(warmUpPublished, TimeUnit.SECONDS.toNanos(30));
+            requireSaved("warm-up");
+            latencies.clear();
+            savedCount.set(0);
+
+            long allocatedBefore = allocatedBytes();
+            long startNanos = System.nanoTime();
+            long published = publish(rate, durationSeconds);
+            awaitSaved(published, TimeUnit.SECONDS.toNanos(30));
+            requireSaved("measured");
+            long elapsedNanos = System.nanoTime() - startNanos;
+            long allocatedBytes = allocatedBytes() - allocatedBefore;
+
+            report(published, elapsedNanos, allocatedBytes);
+            mqttService.unsubscribe();
+            registrationService.shutdown();
+        }
+    }
+
+    private void prepareDevices() {
+        for (int i = 0; i < deviceCount; i++) {
+            String identifier = "harness-" + i;
+            String deviceKey = DataCenter.INTEGRATION_ID + ".device." + identifier;
+            Device device = stub(Device.class);
+            when(device.getKey()).thenReturn(deviceKey);
+            when(device.getIdentifier()).thenReturn(identifier);
+
+            // Each parse hands out a new payload carrying the publish time of the device's oldest pending message
+            Queue<Long> sentAtQueue = new ConcurrentLinkedQueue<>();
+            sentAtQueues.add(sentAtQueue);
+            DeviceTemplateInputResult inputResult = stub(DeviceTemplateInputResult.class);
+            when(inputResult.getDevice()).thenReturn(device);
+            when(inputResult.getPayload()).thenAnswer(invocation -> {
+                ExchangePayload payload = new ExchangePayload();
+                payload.put(deviceKey + ".temperature", 23.5);
+                payload.put(deviceKey + ".humidity", 48);
+                payload.put(deviceKey + SENT_AT_KEY_SUFFIX, sentAtQueue.poll());
+                return payload;
+            });
+
+            String json = "{\"device_id\":\"" + identifier + "\",\"temperature\":23.5,\"humidity\":48}";
+            inputResults.put(json, inputResult);
+            MqttMessage message = stub(MqttMessage.class);
+            when(message.getTopicSubPath()).thenReturn(DataCenter.INTEGRATION_ID + "/site/" + identifier + "/telemetry");
+            when(message.getPayload()).thenReturn(json.getBytes(StandardCharsets.UTF_8));
+            messages.add(message);
+        }
+    }
+
+    private long publish(int messagesPerSecond, int seconds) {
+        long total = (long) messagesPerSecond * seconds;
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / messagesPerSecond;
+        long startNanos = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long dueNanos = startNanos + i * intervalNanos;
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+
+            int deviceIndex = (int) (i % deviceCount);
+            // Latency counts from the scheduled publish time, so falling behind the rate shows up as latency
+            sentAtQueues.get(deviceIndex).add(dueNanos);
+            listener.accept(messages.get(deviceIndex));
+        }
+        return total;
+    }
+
+    private void onSaved(ExchangePayload payload) {
+        long now = System.nanoTime();
+        // A batched write carries the payloads of many messages
+        payload.forEach((key, value) -> {
+            if (key.endsWith(SENT_AT_KEY_SUFFIX) && value instanceof Long sentAt) {
+                latencies.add(now - sentAt);
+                savedCount.incrementAndGet();
+            }
+        });
+    }
+
+    private void awaitSaved(long expected, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (savedCount.get() < expected && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    /**
+     * Fail instead of reporting 0 msg/s when the ingest path stops reaching the write, e.g. on an unstubbed lookup.
+     */
+    private void requireSaved(String pass) {
+        if (savedCount.get() == 0) {
+            throw new IllegalStateException("No message of the " + pass + " pass reached the entity value write, see the logged ingest errors");
+        }
+    }
+
+    private void report(long published, long elapsedNanos, long allocatedBytes) {
+        long[] sortedLatencies = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        double elapsedSeconds = elapsedNanos / 1_000_000_000d;
+        System.out.printf("target rate:      %,d msg/s, %,d devices, batch %s%n", rate, deviceCount, batchEnabled ? "on" : "off");
+        System.out.printf("published:        %,d%n", published);
+        System.out.printf("saved:            %,d%n", savedCount.get());
+        System.out.printf("throughput:       %,.0f msg/s%n", savedCount.get() / elapsedSeconds);
+        System.out.printf("latency p50:      %.3f ms%n", percentile(sortedLatencies, 0.50) / 1_000_000d);
+        System.out.printf("latency p99:      %.3f ms%n", percentile(sortedLatencies, 0.99) / 1_000_000d);
+        System.out.printf("allocation rate:  %,.1f MB/s, %,.0f B/msg%n",
+                allocatedBytes / elapsedSeconds / (1024 * 1024), published == 0 ? 0d : (double) allocatedBytes / published);
+        if (savedCount.get() < published) {
+            // Batching merges the payloads of a device, dropped or overflowed messages never reach the write
+            System.out.printf("warning: %,d messages were not written individually%n", published - savedCount.get());
+        }
+    }
+
+    private static long percentile(long[] sortedValues, double percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        return sortedValues[(int) Math.min(sortedValues.length - 1, Math.ceil(percentile * sortedValues.length) - 1)];
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] allocated = threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds());
+        return Arrays.stream(allocated).filter(bytes -> bytes > 0).sum();
+    }
+
+    private static <T> T stub(Class<T> type) {
+        return mock(type, withSettings().stubOnly());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<MeterRegistry> meterRegistryProvider(MeterRegistry meterRegistry) {
+        ObjectProvider<MeterRegistry> meterRegistryProvider = stub(ObjectProvider.class);
+        when(meterRegistryProvider.getIfAvailable(any())).thenReturn(meterRegistry);
+        return meterRegistryProvider;
+    }
+}
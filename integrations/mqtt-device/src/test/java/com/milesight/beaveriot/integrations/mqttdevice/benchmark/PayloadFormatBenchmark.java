@@ -0,0 +1,59 @@
+package com.milesight.beaveriot.integrations.mqttdevice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.milesight.beaveriot.integrations.mqttdevice.enums.PayloadEncoding;
+import com.milesight.beaveriot.integrations.mqttdevice.support.PayloadDecoder;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode cost per payload encoding of a typical sensor reading. The encoded sizes, i.e. the bytes on the wire
+ * without MQTT framing, are printed once per fork.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=PayloadFormat}
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 16:50
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PayloadFormatBenchmark {
+    @Param({"JSON", "CBOR", "MESSAGE_PACK"})
+    private PayloadEncoding payloadEncoding;
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws Exception {
+        Map<String, Object> reading = new LinkedHashMap<>();
+        reading.put("device_id", "24E124126D154397");
+        reading.put("ts", 1760774400000L);
+        reading.put("temperature", 23.7);
+        reading.put("humidity", 48.5);
+        reading.put("co2", 612);
+        reading.put("battery", 97);
+        reading.put("occupied", true);
+
+        ObjectMapper objectMapper = switch (payloadEncoding) {
+            case CBOR -> new ObjectMapper(new CBORFactory());
+            case MESSAGE_PACK -> new ObjectMapper(new MessagePackFactory());
+            default -> new ObjectMapper();
+        };
+        payload = objectMapper.writeValueAsBytes(reading);
+        System.out.printf("%n%s payload: %d bytes%n", payloadEncoding, payload.length);
+    }
+
+    @Benchmark
+    public String decode() {
+        return PayloadDecoder.toJson(payload, payloadEncoding);
+    }
+}
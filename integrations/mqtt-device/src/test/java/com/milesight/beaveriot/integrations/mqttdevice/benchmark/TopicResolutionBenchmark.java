@@ -0,0 +1,94 @@
+package com.milesight.beaveriot.integrations.mqttdevice.benchmark;
+
+import com.milesight.beaveriot.integrations.mqttdevice.support.DataCenter;
+import com.milesight.beaveriot.integrations.mqttdevice.support.TopicIndex;
+import com.milesight.beaveriot.integrations.mqttdevice.support.TopicSupporter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Topic to template resolution: the linear scan over the topic map that {@code DataCenter.getTemplateIdByTopic}
+ * used to run on every message, against the {@link TopicIndex} it uses now. Half of the templates have a
+ * device id placeholder in their topic.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=TopicResolution}
+ * <p>
+ * author: Luxb
+ * create: 2026/10/18 16:40
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TopicResolutionBenchmark {
+    @Param({"10", "100", "1000"})
+    private int templateCount;
+
+    private Map<String, Long> topicMap;
+    private TopicIndex topicIndex;
+    private String lastExactTopic;
+    private String lastPlaceholderTopic;
+    private String unknownTopic;
+
+    @Setup
+    public void setup() {
+        topicMap = new HashMap<>();
+        for (int i = 0; i < templateCount; i++) {
+            String topic = i % 2 == 0
+                    ? "/site-" + i + "/telemetry"
+                    : "/site-" + i + "/" + DataCenter.DEVICE_ID_PLACEHOLDER + "/telemetry";
+            topicMap.put(topic, (long) i);
+        }
+        topicIndex = TopicIndex.of(topicMap);
+
+        int lastEven = (templateCount - 1) / 2 * 2;
+        int lastOdd = lastEven + 1 < templateCount ? lastEven + 1 : lastEven - 1;
+        lastExactTopic = "/site-" + lastEven + "/telemetry";
+        lastPlaceholderTopic = "/site-" + lastOdd + "/device-42/telemetry";
+        unknownTopic = "/unknown/device-42/telemetry";
+    }
+
+    @Benchmark
+    public Long linearExactTopic() {
+        return linearResolve(lastExactTopic);
+    }
+
+    @Benchmark
+    public Long linearPlaceholderTopic() {
+        return linearResolve(lastPlaceholderTopic);
+    }
+
+    @Benchmark
+    public Long linearUnknownTopic() {
+        return linearResolve(unknownTopic);
+    }
+
+    @Benchmark
+    public Long indexExactTopic() {
+        return topicIndex.resolve(lastExactTopic);
+    }
+
+    @Benchmark
+    public Long indexPlaceholderTopic() {
+        return topicIndex.resolve(lastPlaceholderTopic);
+    }
+
+    @Benchmark
+    public Long indexUnknownTopic() {
+        return topicIndex.resolve(unknownTopic);
+    }
+
+    private Long linearResolve(String topic) {
+        for (Map.Entry<String, Long> entry : topicMap.entrySet()) {
+            if (TopicSupporter.matches(TopicSupporter.convert(entry.getKey()), topic)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,66 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import com.milesight.beaveriot.context.integration.model.ExchangePayload;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/19 10:55
+ **/
+class EntityValueWriteBatcherTest {
+    @Test
+    void mergesPayloadsWithDisjointKeys() {
+        List<ExchangePayload> mergedPayloads = EntityValueWriteBatcher.merge(List.of(
+                timed(Map.of("device-1.temperature", 20), null),
+                timed(Map.of("device-2.temperature", 21), null),
+                timed(Map.of("device-3.temperature", 22), null)
+        ));
+
+        assertEquals(1, mergedPayloads.size());
+        assertEquals(Map.of("device-1.temperature", 20, "device-2.temperature", 21, "device-3.temperature", 22), Map.copyOf(mergedPayloads.get(0)));
+    }
+
+    @Test
+    void startsNewPayloadWhenKeyRepeats() {
+        List<ExchangePayload> mergedPayloads = EntityValueWriteBatcher.merge(List.of(
+                timed(Map.of("device-1.temperature", 20), null),
+                timed(Map.of("device-2.temperature", 21), null),
+                timed(Map.of("device-1.temperature", 22), null)
+        ));
+
+        assertEquals(2, mergedPayloads.size());
+        assertEquals(20, mergedPayloads.get(0).get("device-1.temperature"));
+        assertEquals(21, mergedPayloads.get(0).get("device-2.temperature"));
+        assertEquals(Map.of("device-1.temperature", 22), Map.copyOf(mergedPayloads.get(1)));
+    }
+
+    @Test
+    void onlyMergesPayloadsRecordedAtTheSameTime() {
+        List<ExchangePayload> mergedPayloads = EntityValueWriteBatcher.merge(List.of(
+                timed(Map.of("device-1.temperature", 20), 1000L),
+                timed(Map.of("device-2.temperature", 21), 1000L),
+                timed(Map.of("device-3.temperature", 22), 2000L),
+                timed(Map.of("device-4.temperature", 23), null)
+        ));
+
+        assertEquals(3, mergedPayloads.size());
+        assertEquals(2, mergedPayloads.get(0).size());
+        assertEquals(1000L, mergedPayloads.get(0).getTimestamp());
+        assertEquals(2000L, mergedPayloads.get(1).getTimestamp());
+        assertEquals(Map.of("device-4.temperature", 23), Map.copyOf(mergedPayloads.get(2)));
+    }
+
+    @Test
+    void mergesNothingToNothing() {
+        assertTrue(EntityValueWriteBatcher.merge(List.of()).isEmpty());
+    }
+
+    private static EntityValueWriteBatcher.TimedPayload timed(Map<String, Object> values, Long timestamp) {
+        return new EntityValueWriteBatcher.TimedPayload(new ExchangePayload(values), timestamp);
+    }
+}
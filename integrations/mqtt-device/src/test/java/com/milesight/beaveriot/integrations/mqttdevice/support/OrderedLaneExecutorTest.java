@@ -0,0 +1,185 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import com.milesight.beaveriot.integrations.mqttdevice.enums.IngestOverflowPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/19 9:50
+ **/
+class OrderedLaneExecutorTest {
+    private static final String NAME = "test.ingest";
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private OrderedLaneExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdown(Duration.ofSeconds(1));
+        }
+    }
+
+    @Test
+    void runsTasksOfOneKeyInSubmissionOrder() throws InterruptedException {
+        executor = new OrderedLaneExecutor(NAME, 4, 1000, IngestOverflowPolicy.BLOCK, Duration.ofSeconds(1), meterRegistry);
+        List<Integer> device1 = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> device2 = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1000);
+        for (int i = 0; i < 500; i++) {
+            int sequence = i;
+            executor.execute("device-1", () -> {
+                device1.add(sequence);
+                done.countDown();
+            });
+            executor.execute("device-2", () -> {
+                device2.add(sequence);
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, device1.get(i));
+            assertEquals(i, device2.get(i));
+        }
+    }
+
+    @Test
+    void discardDropsIncomingTaskWhenLaneIsFull() throws InterruptedException {
+        executor = new OrderedLaneExecutor(NAME, 1, 1, IngestOverflowPolicy.DISCARD, Duration.ZERO, meterRegistry);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2);
+
+        assertTrue(executor.execute("key", blockingTask(executed, 1, done)));
+        assertTrue(executor.execute("key", recordingTask(executed, 2, done)));
+        assertFalse(executor.execute("key", recordingTask(executed, 3, done)));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1, 2), executed);
+        assertEquals(1, meterRegistry.get(NAME + ".rejected").counter().count());
+    }
+
+    @Test
+    void discardOldestReplacesQueuedTaskWhenLaneIsFull() throws InterruptedException {
+        executor = new OrderedLaneExecutor(NAME, 1, 1, IngestOverflowPolicy.DISCARD_OLDEST, Duration.ZERO, meterRegistry);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2);
+
+        assertTrue(executor.execute("key", blockingTask(executed, 1, done)));
+        assertTrue(executor.execute("key", recordingTask(executed, 2, done)));
+        assertTrue(executor.execute("key", recordingTask(executed, 3, done)));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1, 3), executed);
+        assertEquals(1, meterRegistry.get(NAME + ".rejected").counter().count());
+    }
+
+    @Test
+    void blockDropsTaskAfterTimeout() {
+        executor = new OrderedLaneExecutor(NAME, 1, 1, IngestOverflowPolicy.BLOCK, Duration.ofMillis(50), meterRegistry);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2);
+
+        assertTrue(executor.execute("key", blockingTask(executed, 1, done)));
+        assertTrue(executor.execute("key", recordingTask(executed, 2, done)));
+        long start = System.nanoTime();
+        assertFalse(executor.execute("key", recordingTask(executed, 3, done)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, meterRegistry.get(NAME + ".rejected").counter().count());
+    }
+
+    @Test
+    void blockWaitsForRoomInLane() throws InterruptedException {
+        executor = new OrderedLaneExecutor(NAME, 1, 1, IngestOverflowPolicy.BLOCK, Duration.ofSeconds(5), meterRegistry);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(3);
+
+        assertTrue(executor.execute("key", blockingTask(executed, 1, done)));
+        assertTrue(executor.execute("key", recordingTask(executed, 2, done)));
+        Thread releaser = new Thread(() -> {
+            sleep(50);
+            release.countDown();
+        });
+        releaser.start();
+        assertTrue(executor.execute("key", recordingTask(executed, 3, done)));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1, 2, 3), executed);
+    }
+
+    @Test
+    void shutdownDrainsQueuedTasksAndRejectsNewOnes() throws InterruptedException {
+        executor = new OrderedLaneExecutor(NAME, 2, 100, IngestOverflowPolicy.BLOCK, Duration.ofSeconds(1), meterRegistry);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            executor.execute("key", recordingTask(executed, i, done));
+        }
+
+        executor.shutdown(Duration.ofSeconds(5));
+
+        assertTrue(done.await(0, TimeUnit.SECONDS));
+        assertEquals(10, executed.size());
+        assertFalse(executor.execute("key", () -> executed.add(-1)));
+        assertTrue(meterRegistry.find(NAME + ".queue.depth").gauges().isEmpty());
+    }
+
+    @Test
+    void shutdownInterruptsTasksRunningPastTimeout() throws InterruptedException {
+        executor = new OrderedLaneExecutor(NAME, 1, 1, IngestOverflowPolicy.BLOCK, Duration.ZERO, meterRegistry);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        executor.execute("key", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+
+        executor.shutdown(Duration.ofMillis(50));
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    private Runnable blockingTask(List<Integer> executed, int sequence, CountDownLatch done) {
+        return () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executed.add(sequence);
+            done.countDown();
+        };
+    }
+
+    private static Runnable recordingTask(List<Integer> executed, int sequence, CountDownLatch done) {
+        return () -> {
+            executed.add(sequence);
+            done.countDown();
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/19 10:45
+ **/
+class PayloadChangeFilterTest {
+    private final PayloadChangeFilter payloadChangeFilter = new PayloadChangeFilter();
+
+    @Test
+    void firstPayloadIsChanged() {
+        assertEquals(PayloadChangeFilter.Decision.CHANGED, payloadChangeFilter.check("device", Map.of("temperature", 20), 0));
+    }
+
+    @Test
+    void samePayloadIsUnchangedAndDifferentPayloadIsChanged() {
+        payloadChangeFilter.check("device", Map.of("temperature", 20), 0);
+
+        assertEquals(PayloadChangeFilter.Decision.UNCHANGED, payloadChangeFilter.check("device", Map.of("temperature", 20), 0));
+        assertEquals(PayloadChangeFilter.Decision.CHANGED, payloadChangeFilter.check("device", Map.of("temperature", 21), 0));
+        assertEquals(PayloadChangeFilter.Decision.CHANGED, payloadChangeFilter.check("other-device", Map.of("temperature", 21), 0));
+    }
+
+    @Test
+    void unchangedPayloadIsKeptAliveOnceIntervalElapsed() throws InterruptedException {
+        payloadChangeFilter.check("device", Map.of("temperature", 20), 20);
+        assertEquals(PayloadChangeFilter.Decision.UNCHANGED, payloadChangeFilter.check("device", Map.of("temperature", 20), 20));
+
+        Thread.sleep(30);
+
+        assertEquals(PayloadChangeFilter.Decision.KEEP_ALIVE, payloadChangeFilter.check("device", Map.of("temperature", 20), 20));
+        assertEquals(PayloadChangeFilter.Decision.UNCHANGED, payloadChangeFilter.check("device", Map.of("temperature", 20), 20));
+    }
+
+    @Test
+    void forgottenDeviceIsChangedAgain() {
+        payloadChangeFilter.check("device", Map.of("temperature", 20), 0);
+        payloadChangeFilter.forget("device");
+
+        assertEquals(PayloadChangeFilter.Decision.CHANGED, payloadChangeFilter.check("device", Map.of("temperature", 20), 0));
+    }
+
+    @Test
+    void hashDoesNotDependOnEntryOrder() {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("temperature", 20);
+        payload.put("humidity", 50);
+        Map<String, Object> reorderedPayload = new LinkedHashMap<>();
+        reorderedPayload.put("humidity", 50);
+        reorderedPayload.put("temperature", 20);
+
+        assertEquals(PayloadChangeFilter.hash(payload), PayloadChangeFilter.hash(reorderedPayload));
+        assertNotEquals(PayloadChangeFilter.hash(Map.of("temperature", 20, "humidity", 50)), PayloadChangeFilter.hash(Map.of("temperature", 50, "humidity", 20)));
+    }
+}
@@ -0,0 +1,64 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/19 11:05
+ **/
+class TenantVersionedCacheTest {
+    private final TenantVersionedCache<String> cache = new TenantVersionedCache<>();
+
+    @Test
+    void loadsOncePerTenant() {
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("value-1", cache.get("tenant-1", () -> "value-" + loads.incrementAndGet()));
+        assertEquals("value-1", cache.get("tenant-1", () -> "value-" + loads.incrementAndGet()));
+        assertEquals("value-2", cache.get("tenant-2", () -> "value-" + loads.incrementAndGet()));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void updateChangesCachedValueOnly() {
+        cache.update("tenant-1", value -> value + "-updated");
+        assertEquals("loaded", cache.get("tenant-1", () -> "loaded"));
+
+        cache.update("tenant-1", value -> value + "-updated");
+
+        assertEquals("loaded-updated", cache.get("tenant-1", () -> "reloaded"));
+    }
+
+    @Test
+    void putReplacesCachedValue() {
+        cache.get("tenant-1", () -> "loaded");
+
+        cache.put("tenant-1", "put");
+
+        assertEquals("put", cache.get("tenant-1", () -> "reloaded"));
+    }
+
+    @Test
+    void invalidateForcesReload() {
+        cache.get("tenant-1", () -> "loaded");
+
+        cache.invalidate("tenant-1");
+
+        assertEquals("reloaded", cache.get("tenant-1", () -> "reloaded"));
+    }
+
+    @Test
+    void valueLoadedDuringInvalidationIsNotCached() {
+        String value = cache.get("tenant-1", () -> {
+            cache.invalidate("tenant-1");
+            return "stale";
+        });
+
+        assertEquals("stale", value);
+        assertEquals("fresh", cache.get("tenant-1", () -> "fresh"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/19 10:50
+ **/
+class TokenBucketTest {
+    @Test
+    void allowsBurstThenRejects() {
+        TokenBucket tokenBucket = new TokenBucket(0.001, 3);
+
+        assertTrue(tokenBucket.tryAcquire());
+        assertTrue(tokenBucket.tryAcquire());
+        assertTrue(tokenBucket.tryAcquire());
+        assertFalse(tokenBucket.tryAcquire());
+    }
+
+    @Test
+    void refillsAtRate() throws InterruptedException {
+        TokenBucket tokenBucket = new TokenBucket(100, 1);
+        assertTrue(tokenBucket.tryAcquire());
+        assertFalse(tokenBucket.tryAcquire());
+
+        Thread.sleep(30);
+
+        assertTrue(tokenBucket.tryAcquire());
+    }
+
+    @Test
+    void neverHoldsMoreThanBurst() throws InterruptedException {
+        TokenBucket tokenBucket = new TokenBucket(1000, 2);
+        Thread.sleep(30);
+
+        assertTrue(tokenBucket.tryAcquire());
+        assertTrue(tokenBucket.tryAcquire());
+        assertFalse(tokenBucket.tryAcquire());
+    }
+
+    @Test
+    void comparesLimitsAndIdleness() {
+        TokenBucket tokenBucket = new TokenBucket(10, 0);
+
+        assertTrue(tokenBucket.hasSameLimit(10, 1));
+        assertFalse(tokenBucket.hasSameLimit(10, 5));
+        assertFalse(tokenBucket.hasSameLimit(20, 1));
+        long beforeAcquire = System.nanoTime();
+        tokenBucket.tryAcquire();
+        assertFalse(tokenBucket.isIdleSince(beforeAcquire));
+        assertTrue(tokenBucket.isIdleSince(System.nanoTime() + 1));
+    }
+}
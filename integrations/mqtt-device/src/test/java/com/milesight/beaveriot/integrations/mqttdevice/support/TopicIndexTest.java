@@ -0,0 +1,50 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/19 10:40
+ **/
+class TopicIndexTest {
+    private final TopicIndex topicIndex = TopicIndex.of(Map.of(
+            "/fixed/uplink", 1L,
+            "/devices/${device_id}/uplink", 2L,
+            "/devices/${device_id}/status", 3L
+    ));
+
+    @Test
+    void resolvesExactTopicWithoutDeviceIdentifier() {
+        TopicIndex.TopicMatch topicMatch = topicIndex.match("/fixed/uplink");
+
+        assertEquals(1L, topicMatch.deviceTemplateId());
+        assertNull(topicMatch.deviceIdentifier());
+    }
+
+    @Test
+    void resolvesPlaceholderTopicWithDeviceIdentifier() {
+        TopicIndex.TopicMatch topicMatch = topicIndex.match("/devices/sensor-1/status");
+
+        assertEquals(3L, topicMatch.deviceTemplateId());
+        assertEquals("sensor-1", topicMatch.deviceIdentifier());
+        assertEquals(2L, topicIndex.resolve("/devices/sensor-2/uplink"));
+    }
+
+    @Test
+    void returnsNullForUnknownTopics() {
+        assertNull(topicIndex.match("/devices/sensor-1/downlink"));
+        assertNull(topicIndex.match("/devices/sensor-1/uplink/extra"));
+        assertNull(topicIndex.resolve("/fixed"));
+        assertNull(TopicIndex.of(Map.of()).resolve("/fixed/uplink"));
+    }
+
+    @Test
+    void keepsTheOriginalTopicMap() {
+        assertEquals(3, topicIndex.getTopicMap().size());
+        assertEquals(2L, topicIndex.getTopicMap().get("/devices/${device_id}/uplink"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.milesight.beaveriot.integrations.mqttdevice.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * author: Luxb
+ * create: 2026/10/19 11:00
+ **/
+class TopicSubscriptionRegistryTest {
+    private final TopicSubscriptionRegistry topicSubscriptionRegistry = new TopicSubscriptionRegistry();
+
+    @Test
+    void subscribesFilterOnceForAllTenants() {
+        TopicSubscriptionRegistry.Change first = topicSubscriptionRegistry.update("tenant-1", Set.of("mqtt-device/a", "mqtt-device/b"));
+        TopicSubscriptionRegistry.Change second = topicSubscriptionRegistry.update("tenant-2", Set.of("mqtt-device/a"));
+
+        assertEquals(Set.of("mqtt-device/a", "mqtt-device/b"), Set.copyOf(first.getToSubscribe()));
+        assertTrue(first.getToUnsubscribe().isEmpty());
+        assertTrue(second.getToSubscribe().isEmpty());
+        assertTrue(second.getToUnsubscribe().isEmpty());
+    }
+
+    @Test
+    void unsubscribesFilterOnlyWhenNoTenantUsesIt() {
+        topicSubscriptionRegistry.update("tenant-1", Set.of("mqtt-device/a", "mqtt-device/b"));
+        topicSubscriptionRegistry.update("tenant-2", Set.of("mqtt-device/a"));
+
+        TopicSubscriptionRegistry.Change change = topicSubscriptionRegistry.update("tenant-1", Set.of());
+
+        assertTrue(change.getToSubscribe().isEmpty());
+        assertEquals(List.of("mqtt-device/b"), change.getToUnsubscribe());
+        assertEquals(List.of("mqtt-device/a"), topicSubscriptionRegistry.update("tenant-2", Set.of()).getToUnsubscribe());
+    }
+
+    @Test
+    void replacesFiltersOfTenant() {
+        topicSubscriptionRegistry.update("tenant-1", Set.of("mqtt-device/a"));
+
+        TopicSubscriptionRegistry.Change change = topicSubscriptionRegistry.update("tenant-1", Set.of("mqtt-device/b"));
+
+        assertEquals(List.of("mqtt-device/b"), change.getToSubscribe());
+        assertEquals(List.of("mqtt-device/a"), change.getToUnsubscribe());
+    }
+
+    @Test
+    void clearReturnsEverySubscribedFilter() {
+        topicSubscriptionRegistry.update("tenant-1", Set.of("mqtt-device/a"));
+        topicSubscriptionRegistry.update("tenant-2", Set.of("mqtt-device/b"));
+
+        assertEquals(Set.of("mqtt-device/a", "mqtt-device/b"), topicSubscriptionRegistry.clear());
+        assertEquals(List.of("mqtt-device/a"), topicSubscriptionRegistry.update("tenant-1", Set.of("mqtt-device/a")).getToSubscribe());
+    }
+}